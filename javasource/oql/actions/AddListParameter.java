@@ -0,0 +1,66 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.ListParameters;
+import oql.implementation.OQL;
+
+/**
+ * This action adds a list parameter for an IN predicate in the next OQL statement, e.g. P.Code IN $Codes. The parameter
+ * holds the value of the attribute of every object in the list (e.g. the Code of a list of CodeFilter objects).
+ * 
+ * Every value is passed as a separate parameter, so no values are concatenated into the statement. The list is padded 
+ * to 16, 64 or 256 values, so lists of different sizes share the same statement (and execution plan in the database). 
+ * Longer lists are split into chunks of 256 values. Up to 2000 values can be used per statement in total (including other 
+ * parameters); lists are not padded when padding would exceed that. With an empty list, 
+ * IN matches no rows and NOT IN matches all rows.
+ */
+public class AddListParameter extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.String name;
+	private java.util.List<IMendixObject> values;
+	private java.lang.String attribute;
+
+	public AddListParameter(IContext context, java.lang.String name, java.util.List<IMendixObject> values, java.lang.String attribute)
+	{
+		super(context);
+		this.name = name;
+		this.values = values;
+		this.attribute = attribute;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		if (attribute == null || attribute.trim().isEmpty()) {
+			throw new IllegalArgumentException("An attribute should be given, use AddObjectListParameter to add the objects themselves.");
+		}
+		OQL.addParameter(name, ListParameters.getValues(getContext(), values, attribute));
+		return true;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "AddListParameter";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
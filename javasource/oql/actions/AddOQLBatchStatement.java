@@ -0,0 +1,63 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQL;
+import oql.implementation.OQLBatch;
+
+/**
+ * Adds a statement to the batch of the current microflow, to be executed by ExecuteOQLBatch.
+ * The parameters added before this action are used for this statement only and are reset afterwards,
+ * so every statement in the batch can have its own parameters.
+ * 
+ * Returns the index of the statement, which is used by GetOQLBatchResult to obtain its result.
+ * Adding a statement after ExecuteOQLBatch starts a new batch.
+ */
+public class AddOQLBatchStatement extends CustomJavaAction<java.lang.Long>
+{
+	private java.lang.String statement;
+	private java.lang.String returnEntity;
+	private java.lang.Long amount;
+	private java.lang.Long offset;
+
+	public AddOQLBatchStatement(IContext context, java.lang.String statement, java.lang.String returnEntity, java.lang.Long amount, java.lang.Long offset)
+	{
+		super(context);
+		this.statement = statement;
+		this.returnEntity = returnEntity;
+		this.amount = amount;
+		this.offset = offset;
+	}
+
+	@java.lang.Override
+	public java.lang.Long executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		int index = OQLBatch.get(getContext()).add(statement, returnEntity, amount, offset, OQL.getNextParameters());
+		OQL.resetParameters();
+		return (long) index;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "AddOQLBatchStatement";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
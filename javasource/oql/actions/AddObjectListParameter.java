@@ -0,0 +1,57 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.ListParameters;
+import oql.implementation.OQL;
+
+/**
+ * This action adds a list of objects as parameter for an IN predicate in the next OQL statement, 
+ * e.g. P/Module.Product_Category/Module.Category/ID IN $Categories. Like AddObjectParameter, the ids of the objects are used.
+ * 
+ * See AddListParameter for how the list is passed to the database.
+ */
+public class AddObjectListParameter extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.String name;
+	private java.util.List<IMendixObject> values;
+
+	public AddObjectListParameter(IContext context, java.lang.String name, java.util.List<IMendixObject> values)
+	{
+		super(context);
+		this.name = name;
+		this.values = values;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		OQL.addParameter(name, ListParameters.getValues(getContext(), values, null));
+		return true;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "AddObjectListParameter";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,52 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.ExportJobs;
+
+/**
+ * Cancels the queued or running background export into the given download, see ExportOQLToCSVInBackground.
+ * Only the user who queued the export can cancel it. Returns false if no export into the download is queued or running 
+ * for this user.
+ */
+public class CancelOQLExport extends CustomJavaAction<java.lang.Boolean>
+{
+	private IMendixObject download;
+
+	public CancelOQLExport(IContext context, IMendixObject download)
+	{
+		super(context);
+		this.download = download;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		return ExportJobs.cancel(getContext(), this.download.getId());
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "CancelOQLExport";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
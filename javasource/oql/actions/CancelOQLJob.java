@@ -0,0 +1,52 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQLJobs;
+
+/**
+ * Cancels a job started by ExecuteOQLStatementAsync by interrupting the thread executing its statement.
+ * A statement which is already executing is not aborted in the database and keeps counting against the
+ * maximum amount of jobs of the user until it completes; its result is discarded.
+ * Returns false if the job had already finished.
+ */
+public class CancelOQLJob extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.String handle;
+
+	public CancelOQLJob(IContext context, java.lang.String handle)
+	{
+		super(context);
+		this.handle = handle;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		return OQLJobs.cancel(getContext(), handle);
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "CancelOQLJob";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,59 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQLExecutor;
+import oql.implementation.OQLJobs;
+
+/**
+ * Configures the background execution of statements by ExecuteOQLBatch and ExecuteOQLStatementAsync.
+ * - poolSize: the amount of statements executed at the same time (8 by default). Every statement uses a database connection, 
+ * so keep this well below the size of the connection pool of the runtime.
+ * - maxJobsPerUser: the amount of running ExecuteOQLStatementAsync jobs a single user can have (4 by default).
+ */
+public class ConfigureOQLExecution extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.Long poolSize;
+	private java.lang.Long maxJobsPerUser;
+
+	public ConfigureOQLExecution(IContext context, java.lang.Long poolSize, java.lang.Long maxJobsPerUser)
+	{
+		super(context);
+		this.poolSize = poolSize;
+		this.maxJobsPerUser = maxJobsPerUser;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		if (poolSize != null)
+			OQLExecutor.setPoolSize(poolSize.intValue());
+		if (maxJobsPerUser != null)
+			OQLJobs.setMaxJobsPerUser(maxJobsPerUser.intValue());
+		return true;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ConfigureOQLExecution";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,58 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.ExportJobs;
+
+/**
+ * Configures the execution of background exports by ExportOQLToCSVInBackground.
+ * - maxConcurrentExports: the amount of exports executed at the same time (2 by default). Every export uses a database 
+ * connection and a thread for its whole duration.
+ * - maxQueuedExports: the amount of exports which can wait for execution (100 by default), submitting more exports fails.
+ */
+public class ConfigureOQLExportQueue extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.Long maxConcurrentExports;
+	private java.lang.Long maxQueuedExports;
+
+	public ConfigureOQLExportQueue(IContext context, java.lang.Long maxConcurrentExports, java.lang.Long maxQueuedExports)
+	{
+		super(context);
+		this.maxConcurrentExports = maxConcurrentExports;
+		this.maxQueuedExports = maxQueuedExports;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		if (maxConcurrentExports != null)
+			ExportJobs.setMaxConcurrentExports(maxConcurrentExports.intValue());
+		if (maxQueuedExports != null)
+			ExportJobs.setMaxQueuedExports(maxQueuedExports.intValue());
+		return true;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ConfigureOQLExportQueue";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,60 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.ResultCache;
+
+/**
+ * Sets the bounds of the result cache used by ExecuteCachedOQLStatement.
+ * The least recently used results are evicted when either the amount of entries or the estimated size (in kilobytes) is exceeded.
+ * Defaults are 1000 entries and 65536 kilobytes, which are used when a bound is left empty.
+ */
+public class ConfigureOQLResultCache extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.Long maxEntries;
+	private java.lang.Long maxSizeInKB;
+
+	public ConfigureOQLResultCache(IContext context, java.lang.Long maxEntries, java.lang.Long maxSizeInKB)
+	{
+		super(context);
+		this.maxEntries = maxEntries;
+		this.maxSizeInKB = maxSizeInKB;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		if ((maxEntries != null && maxEntries < 1) || (maxSizeInKB != null && maxSizeInKB < 1)) {
+			throw new IllegalArgumentException("The maximum amount of entries and size should be at least 1, got " + 
+					maxEntries + " entries and " + maxSizeInKB + " KB.");
+		}
+		ResultCache.getInstance().configure(
+				maxEntries != null ? maxEntries.intValue() : ResultCache.DEFAULT_MAX_ENTRIES,
+				maxSizeInKB != null ? maxSizeInKB * 1024 : ResultCache.DEFAULT_MAX_SIZE);
+		return true;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ConfigureOQLResultCache";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,65 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.SlowQueryLog;
+
+/**
+ * Configures the slow query log. Every execution (statement, count, exists, stream or export page) taking at least 
+ * thresholdMillis milliseconds is kept in a buffer holding the last bufferSize executions (by default 1000 milliseconds and 100 executions, 
+ * which are also used when left empty). A negative threshold disables the log.
+ * 
+ * When logEntity is given (e.g. 'MyFirstModule.SlowQuery'), every slow execution is also committed as an object of that entity 
+ * by a background thread, so these objects appear shortly after the execution.
+ * The entity can have the following attributes: Statement (String, unlimited), Parameters (String, unlimited), Rows, QueryTime, 
+ * MappingTime and Duration (Long, times in milliseconds), UserName (String) and ExecutedAt (DateTime). Attributes which are not present are skipped.
+ */
+public class ConfigureOQLSlowQueryLog extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.Long thresholdMillis;
+	private java.lang.Long bufferSize;
+	private java.lang.String logEntity;
+
+	public ConfigureOQLSlowQueryLog(IContext context, java.lang.Long thresholdMillis, java.lang.Long bufferSize, java.lang.String logEntity)
+	{
+		super(context);
+		this.thresholdMillis = thresholdMillis;
+		this.bufferSize = bufferSize;
+		this.logEntity = logEntity;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		if (bufferSize != null && bufferSize < 0) {
+			throw new IllegalArgumentException("The buffer size should not be negative, got " + bufferSize);
+		}
+		SlowQueryLog.configure(thresholdMillis != null ? thresholdMillis : SlowQueryLog.DEFAULT_THRESHOLD, 
+				bufferSize != null ? bufferSize.intValue() : SlowQueryLog.DEFAULT_BUFFER_SIZE, logEntity);
+		return true;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ConfigureOQLSlowQueryLog";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -21,6 +21,8 @@ import oql.implementation.OQL;
 /**
  * This action executes the OQL statement and returns the amount of rows which will be returned by the OQL statement.
  * The main purpose of this action was to avoid overhead of object creation while the interest is to determine if a record within the database exists.
+ * The statement is wrapped as SELECT COUNT(*) FROM (statement), so the database only returns the count. When amount is greater than zero, 
+ * the result is capped at amount. To check whether any row exists, use ExistsOQLStatement instead.
  */
 public class CountRowsOQLStatement extends CustomJavaAction<java.lang.Long>
 {
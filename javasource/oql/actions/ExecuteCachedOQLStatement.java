@@ -0,0 +1,85 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import java.util.List;
+import java.util.Map;
+import com.mendix.core.Core;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQL;
+
+/**
+ * This action executes a given OQL statement like ExecuteOQLStatement, but keeps the resulting rows in a cache.
+ * Executing the same statement with the same parameter values, amount and offset within cacheSeconds returns the cached rows 
+ * (mapped to new objects of the result entity) without querying the database.
+ * 
+ * Cached results are removed as soon as an object of an entity used in the statement is committed or deleted. 
+ * Deletes are only signalled by runtimes offering an after delete listener (this is logged when the cache is first used). 
+ * On other runtimes, only deletes of this module (e.g. MaterializeOQLStatement with Replace) remove cached results; 
+ * call InvalidateOQLResultCache from an after delete event when needed, or rely on the time to live.
+ * 
+ * Use ConfigureOQLResultCache to set the bounds of the cache and GetOQLResultCacheStatistics to monitor it.
+ */
+public class ExecuteCachedOQLStatement extends CustomJavaAction<java.util.List<IMendixObject>>
+{
+	private java.lang.String statement;
+	private java.lang.String returnEntity;
+	private java.lang.Long amount;
+	private java.lang.Long offset;
+	private java.lang.Boolean preserveParameters;
+	private java.lang.Long cacheSeconds;
+
+	public ExecuteCachedOQLStatement(IContext context, java.lang.String statement, java.lang.String returnEntity, java.lang.Long amount, java.lang.Long offset, java.lang.Boolean preserveParameters, java.lang.Long cacheSeconds)
+	{
+		super(context);
+		this.statement = statement;
+		this.returnEntity = returnEntity;
+		this.amount = amount;
+		this.offset = offset;
+		this.preserveParameters = preserveParameters;
+		this.cacheSeconds = cacheSeconds;
+	}
+
+	@java.lang.Override
+	public java.util.List<IMendixObject> executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		IContext context = getContext().createSudoClone();
+		ILogNode logger = Core.getLogger(this.getClass().getSimpleName());
+		
+		logger.debug("Mapping parameters.");
+		Map<String, Object> parameters = OQL.getNextParameters();
+		List<IMendixObject> result = 
+				OQL.executeCachedOQL(context, statement, returnEntity, amount, offset, parameters, 
+						cacheSeconds != null ? cacheSeconds * 1000 : 0);
+		
+		if (!this.preserveParameters) 
+			OQL.resetParameters();
+		
+		return result;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ExecuteCachedOQLStatement";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,52 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQLBatch;
+
+/**
+ * Executes all statements added using AddOQLBatchStatement concurrently, each in its own sudo context and transaction, 
+ * so changes which have not been committed yet by the calling microflow are not visible to the statements.
+ * The duration of this action is therefore close to the duration of the slowest statement instead of the sum of all statements.
+ * The amount of statements executed at the same time is bounded by the pool size of the module (8 by default).
+ * 
+ * Use GetOQLBatchResult to obtain the result of each statement.
+ */
+public class ExecuteOQLBatch extends CustomJavaAction<java.lang.Boolean>
+{
+	public ExecuteOQLBatch(IContext context)
+	{
+		super(context);
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		OQLBatch.get(getContext()).execute(getContext());
+		return true;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ExecuteOQLBatch";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,75 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import java.util.List;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQL;
+import oql.implementation.TreeMapping;
+
+/**
+ * This action executes a given OQL statement which joins parents with their children (e.g. orders with their lines) and maps 
+ * every row onto a tree of objects, instead of executing a statement for the children of every parent.
+ * 
+ * The alias of a column holds the path of the object it belongs to, separated by double underscores (OQL does not accept 
+ * dots in aliases). Columns without a path are mapped onto the result entity. A path segment is the name (without module) 
+ * of an association leading to the entity of the child objects, or the name of that entity. For example, with the entities 
+ * OrderResult and LineResult and an association LineResult_OrderResult:
+ * 
+ * SELECT O.ID AS ID, O.Number AS Number, L.ID AS LineResult__ID, L.Quantity AS LineResult__Quantity
+ * FROM Module.Order O LEFT JOIN O/Module.Line_Order/Module.Line L
+ * 
+ * Objects are de-duplicated by the column named ID on their path, or by all their values when there is no such column. 
+ * The association between every child and its parent is set while mapping the rows, which are retrieved in one request. 
+ * Returns the objects of the result entity.
+ */
+public class ExecuteOQLStatementAsTree extends CustomJavaAction<java.util.List<IMendixObject>>
+{
+	private java.lang.String statement;
+	private java.lang.String returnEntity;
+	private java.lang.Boolean preserveParameters;
+
+	public ExecuteOQLStatementAsTree(IContext context, java.lang.String statement, java.lang.String returnEntity, java.lang.Boolean preserveParameters)
+	{
+		super(context);
+		this.statement = statement;
+		this.returnEntity = returnEntity;
+		this.preserveParameters = preserveParameters;
+	}
+
+	@java.lang.Override
+	public java.util.List<IMendixObject> executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		IContext context = getContext().createSudoClone();
+		List<IMendixObject> result = TreeMapping.execute(context, statement, returnEntity, OQL.getNextParameters());
+
+		if (!this.preserveParameters)
+			OQL.resetParameters();
+
+		return result;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ExecuteOQLStatementAsTree";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,65 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQL;
+import oql.implementation.OQLJobs;
+
+/**
+ * This action starts executing a given OQL statement in the background and returns immediately with a handle (a String) for the job.
+ * Parameters are used the same way as ExecuteOQLStatement and are reset after invocation of this action.
+ * The job runs in its own transaction, so changes which have not been committed yet by the calling microflow are not visible to it.
+ * 
+ * Use GetOQLJobStatus to poll the status of the job (Running, Completed, Failed or Cancelled), GetOQLJobResult to obtain the
+ * objects of the result entity once the job has completed and CancelOQLJob to cancel it.
+ * Jobs can only be accessed by the user who started them. The amount of running jobs per user is limited (4 by default), 
+ * see ConfigureOQLExecution.
+ */
+public class ExecuteOQLStatementAsync extends CustomJavaAction<java.lang.String>
+{
+	private java.lang.String statement;
+	private java.lang.String returnEntity;
+	private java.lang.Long amount;
+	private java.lang.Long offset;
+
+	public ExecuteOQLStatementAsync(IContext context, java.lang.String statement, java.lang.String returnEntity, java.lang.Long amount, java.lang.Long offset)
+	{
+		super(context);
+		this.statement = statement;
+		this.returnEntity = returnEntity;
+		this.amount = amount;
+		this.offset = offset;
+	}
+
+	@java.lang.Override
+	public java.lang.String executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		String handle = OQLJobs.submit(getContext(), statement, returnEntity, amount, offset, OQL.getNextParameters());
+		OQL.resetParameters();
+		return handle;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ExecuteOQLStatementAsync";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
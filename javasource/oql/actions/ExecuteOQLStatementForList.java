@@ -0,0 +1,98 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.BulkLookup;
+import oql.implementation.OQL;
+
+/**
+ * This action executes an OQL statement for every object in a list of inputs using a few statements, instead of executing 
+ * the statement once per input (e.g. in a loop).
+ * 
+ * The statement compares a column with a key parameter, e.g. SELECT P.Code AS Code, P.Name AS Name FROM Module.Product P 
+ * WHERE P.Code = $Code. This predicate is rewritten to P.Code IN (...) for chunks of at most chunkSize distinct keys 
+ * (1000 by default, which every supported database accepts).
+ * - keyParameter: the name of the parameter (e.g. Code)
+ * - keyAttribute: the attribute of the inputs holding the key. When empty, the id of the input is used (like AddObjectParameter).
+ * - keyColumn: the alias of the column in the select list holding the key, used to match every row with its inputs
+ * - inputAssociation: optional association from the return entity to the entity of the inputs, set on every result
+ * - parallel: execute the chunks concurrently (see ConfigureOQLExecution), each in its own transaction, so changes which have 
+ *   not been committed yet by the calling microflow are not visible to them
+ * 
+ * Every row is mapped once for every input with its key, the result is ordered by input. Other parameters are used by 
+ * all chunks.
+ */
+public class ExecuteOQLStatementForList extends CustomJavaAction<java.util.List<IMendixObject>>
+{
+	private java.lang.String statement;
+	private java.lang.String returnEntity;
+	private java.util.List<IMendixObject> inputs;
+	private java.lang.String keyParameter;
+	private java.lang.String keyAttribute;
+	private java.lang.String keyColumn;
+	private java.lang.String inputAssociation;
+	private java.lang.Long chunkSize;
+	private java.lang.Boolean parallel;
+
+	public ExecuteOQLStatementForList(IContext context, java.lang.String statement, java.lang.String returnEntity, java.util.List<IMendixObject> inputs, java.lang.String keyParameter, java.lang.String keyAttribute, java.lang.String keyColumn, java.lang.String inputAssociation, java.lang.Long chunkSize, java.lang.Boolean parallel)
+	{
+		super(context);
+		this.statement = statement;
+		this.returnEntity = returnEntity;
+		this.inputs = inputs;
+		this.keyParameter = keyParameter;
+		this.keyAttribute = keyAttribute;
+		this.keyColumn = keyColumn;
+		this.inputAssociation = inputAssociation;
+		this.chunkSize = chunkSize;
+		this.parallel = parallel;
+	}
+
+	@java.lang.Override
+	public java.util.List<IMendixObject> executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		IContext context = getContext().createSudoClone();
+		BulkLookup lookup = new BulkLookup(statement, keyParameter, keyColumn, OQL.getNextParameters(), 
+				chunkSize != null && chunkSize > 0 ? chunkSize.intValue() : BulkLookup.DEFAULT_CHUNK_SIZE, 
+				Boolean.TRUE.equals(parallel));
+		
+		List<Object> keys = new ArrayList<Object>(inputs.size());
+		for (IMendixObject input : inputs) {
+			if (keyAttribute == null || keyAttribute.trim().isEmpty()) {
+				keys.add(input.getId());
+			} else {
+				keys.add(input.getValue(context, keyAttribute));
+			}
+		}
+		List<IMendixObject> result = lookup.execute(context, returnEntity, inputs, keys, inputAssociation);
+		OQL.resetParameters();
+		return result;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ExecuteOQLStatementForList";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,59 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.core.Core;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQL;
+
+/**
+ * This action returns whether the OQL statement returns at least one row.
+ * Only a single row is retrieved from the database, which makes it the cheapest way to check if a record exists.
+ */
+public class ExistsOQLStatement extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.String statement;
+
+	public ExistsOQLStatement(IContext context, java.lang.String statement)
+	{
+		super(context);
+		this.statement = statement;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		IContext context = getContext().createSudoClone();
+		ILogNode logger = Core.getLogger(this.getClass().getSimpleName());
+		
+		logger.debug("Mapping parameters.");
+		boolean result = OQL.existsOQL(context, statement, OQL.getNextParameters());
+		
+		OQL.resetParameters();
+		return result;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ExistsOQLStatement";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
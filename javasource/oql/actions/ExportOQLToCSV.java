@@ -9,32 +9,60 @@
 
 package oql.actions;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.util.Date;
-import java.util.Map.Entry;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import com.mendix.core.Core;
 import com.mendix.logging.ILogNode;
-import com.mendix.systemwideinterfaces.connectionbus.data.IDataColumnSchema;
-import com.mendix.systemwideinterfaces.connectionbus.data.IDataRow;
-import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
-import com.mendix.systemwideinterfaces.connectionbus.data.IDataTableSchema;
-import com.mendix.systemwideinterfaces.connectionbus.requests.IParameterMap;
-import com.mendix.systemwideinterfaces.connectionbus.requests.IRetrievalSchema;
-import com.mendix.systemwideinterfaces.connectionbus.requests.types.IOQLTextGetRequest;
 import com.mendix.systemwideinterfaces.core.IContext;
-import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
 import com.mendix.systemwideinterfaces.core.IMendixObject;
 import com.mendix.webui.CustomJavaAction;
-import com.opencsv.CSVWriter;
+import oql.implementation.CSVExport;
+import oql.implementation.ExportCheckpoint;
+import oql.implementation.ExportPipe;
+import oql.implementation.ExportWatermark;
 import oql.implementation.OQL;
+import oql.implementation.ResultPager;
 import system.proxies.FileDocument;
 
+/**
+ * This action exports the result of an OQL statement to a CSV file, retrieving the result in pages of 10000 rows.
+ * 
+ * When keyColumn is empty, pages are retrieved using an offset. For large results this becomes slow as the 
+ * database has to skip all previous rows for every page.
+ * When keyColumn is given (the alias of a unique, increasing column in the select list, typically the id of the main entity), 
+ * pages are retrieved using WHERE key > last key ORDER BY key, so every page costs the same and rows are not skipped or 
+ * duplicated when data changes during the export.
+ * 
+ * When workerCount is larger than 1 (requires keyColumn to be a numeric or id column), the key range is split into 
+ * one partition per worker. The partitions are queried and written concurrently and combined in key order afterwards.
+ * Every worker uses its own context and database connection, so changes which have not been committed yet by the calling 
+ * microflow are not exported. The workers run on the shared pool of ConfigureOQLExecution, so at most its pool size 
+ * (8 by default) of workers is used.
+ * 
+ * The export is written directly into the file document while it is being generated, without a temporary file.
+ * Without workers, it uses a sudo clone of the context of the calling microflow, so its uncommitted changes are exported.
+ * 
+ * When a checkpoint is given, the export is resumable: the rows are first written to the file in its OutputPath 
+ * (a file in the temp directory when empty), saving LastKey, RowsWritten and ByteOffset in the checkpoint after 
+ * every page. When the export is interrupted, e.g. by a restart, executing it again with the same checkpoint continues 
+ * after the last saved page instead of starting over. Use a key column and a committed checkpoint object, and point 
+ * OutputPath to persistent storage when the temp directory does not survive a restart. The checkpoint is cleared 
+ * once the file document has been stored. The checkpoint entity requires the attributes RowsWritten (Long), ByteOffset (Long) 
+ * and OutputPath (String), and LastKey (String) when a key column is given; the export fails when one of these is missing.
+ * 
+ * When a watermark object is given, only the rows changed since the previous export are exported: the rows whose 
+ * watermarkColumn (the alias of e.g. a changed date or an id, which increases when a row changes) is greater than 
+ * the Watermark saved in that object, up to the highest value held back by watermarkLag. The upper bound is saved in 
+ * the watermark object, together with LastExported and RowsExported, in the same transaction as the file document. 
+ * A row committed after a later row has been exported is skipped if its watermark is at or below that upper bound, so 
+ * watermarkLag (in milliseconds for a DateTime column, default 60000; otherwise in units of the column, default 0) 
+ * should exceed the duration of the transactions changing the rows. An export with a watermark cannot be resumed from 
+ * a checkpoint.
+ */
 public class ExportOQLToCSV extends CustomJavaAction<IMendixObject>
 {
 	private java.lang.String statement;
@@ -45,8 +73,14 @@ public class ExportOQLToCSV extends CustomJavaAction<IMendixObject>
 	private java.lang.String separatorChar;
 	private java.lang.String quoteChar;
 	private java.lang.String escapeChar;
+	private java.lang.String keyColumn;
+	private java.lang.Long workerCount;
+	private IMendixObject checkpoint;
+	private java.lang.String watermarkColumn;
+	private IMendixObject watermark;
+	private java.lang.Long watermarkLag;
 
-	public ExportOQLToCSV(IContext context, java.lang.String statement, java.lang.String returnEntity, java.lang.Boolean removeNewLinesFromValues, java.lang.Boolean zipResult, java.lang.Boolean exportHeaders, java.lang.String separatorChar, java.lang.String quoteChar, java.lang.String escapeChar)
+	public ExportOQLToCSV(IContext context, java.lang.String statement, java.lang.String returnEntity, java.lang.Boolean removeNewLinesFromValues, java.lang.Boolean zipResult, java.lang.Boolean exportHeaders, java.lang.String separatorChar, java.lang.String quoteChar, java.lang.String escapeChar, java.lang.String keyColumn, java.lang.Long workerCount, IMendixObject checkpoint, java.lang.String watermarkColumn, IMendixObject watermark, java.lang.Long watermarkLag)
 	{
 		super(context);
 		this.statement = statement;
@@ -57,92 +91,88 @@ public class ExportOQLToCSV extends CustomJavaAction<IMendixObject>
 		this.separatorChar = separatorChar;
 		this.quoteChar = quoteChar;
 		this.escapeChar = escapeChar;
+		this.keyColumn = keyColumn;
+		this.workerCount = workerCount;
+		this.checkpoint = checkpoint;
+		this.watermarkColumn = watermarkColumn;
+		this.watermark = watermark;
+		this.watermarkLag = watermarkLag;
 	}
 
 	@java.lang.Override
 	public IMendixObject executeAction() throws Exception
 	{
 		// BEGIN USER CODE
-		final int PAGE_SIZE = 10000;
-		
 		ILogNode logger = Core.getLogger(this.getClass().getSimpleName());
-		String suffix = ".csv";
+		String fileName = "Export" + System.currentTimeMillis() + ".csv";
 		if (this.zipResult) {
-			suffix += ".zip";
-		}
-		File tmpFile = File.createTempFile("Export", suffix);
-		OutputStream os;
-		FileOutputStream fos = new FileOutputStream(tmpFile);
-		ZipOutputStream zos = null;
-		if (zipResult) {
-			zos = new ZipOutputStream(fos);
-			zos.putNextEntry(new ZipEntry(tmpFile.getName().replaceAll(".zip", "")));
-			os = zos;
-		} else {
-			os = fos;
+			fileName += ".zip";
 		}
-		
-        CSVWriter writer = new CSVWriter(new OutputStreamWriter(os), 
-                this.separatorChar.charAt(0), 
-                this.quoteChar != null ? this.quoteChar.charAt(0) : CSVWriter.NO_QUOTE_CHARACTER,
-                this.escapeChar != null ? this.escapeChar.charAt(0) : CSVWriter.NO_ESCAPE_CHARACTER, 
-                "\r\n");
+		final String entryName = fileName.replaceAll(".zip", "");
+
+		final CSVExport export = new CSVExport(this.separatorChar, this.quoteChar, this.escapeChar, 
+				this.removeNewLinesFromValues, this.exportHeaders);
+		final Map<String, Object> parameters = OQL.getNextParameters();
+		final IContext exportContext = getContext().createSudoClone();
 
 		IMendixObject result = Core.instantiate(getContext(), this.returnEntity);
+		result.setValue(getContext(), FileDocument.MemberNames.Name.toString(), fileName);
+
+		if (this.workerCount != null && this.workerCount > 1 && 
+				(this.keyColumn == null || this.keyColumn.trim().isEmpty())) {
+			throw new IllegalArgumentException("A key column is required to export using multiple workers.");
+		}
+		if (this.checkpoint != null && this.workerCount != null && this.workerCount > 1) {
+			throw new IllegalArgumentException("An export with a checkpoint is executed by a single worker.");
+		}
+		if (this.checkpoint != null && this.watermark != null) {
+			throw new IllegalArgumentException("An export with a watermark cannot be resumed from a checkpoint.");
+		}
 		
 		logger.debug("Executing query");
 		
-		int offset = 0;
-		while(true) {
-			logger.debug("Executing query offset " + offset);
-			
-			
-			IContext context = getContext().createSudoClone();
-			IDataTable results = Core.retrieveOQLDataTable(context, buildRequest(statement, offset, PAGE_SIZE));
-
-			IDataTableSchema tableSchema = results.getSchema();
-			
-			if (this.exportHeaders && offset == 0) {
-				String[] headers = new String[tableSchema.getColumnCount()];
-				int index = 0;
-				for (IDataColumnSchema columnSchema : tableSchema.getColumnSchemas()) {
-					headers[index] = columnSchema.getName();
-					index++;
+		final ExportWatermark exportWatermark = this.watermark != null ? 
+				new ExportWatermark(getContext(), this.watermark, this.watermarkColumn, this.watermarkLag) : null;
+		final String exportStatement = exportWatermark != null ? 
+				exportWatermark.restrict(exportContext, this.statement, parameters) : this.statement;
+		final AtomicLong rowsExported = new AtomicLong();
+		
+		final ExportCheckpoint exportCheckpoint = this.checkpoint != null ? 
+				new ExportCheckpoint(getContext(), this.checkpoint, this.keyColumn != null && !this.keyColumn.trim().isEmpty()) : null;
+		if (exportCheckpoint != null) {
+			export.exportResumable(exportContext, new ResultPager(exportStatement, parameters, CSVExport.PAGE_SIZE, keyColumn), 
+					exportCheckpoint);
+		}
+		
+		ExportPipe.store(getContext(), result, new ExportPipe.Producer() {
+			@Override
+			public void write(OutputStream os) throws Exception {
+				ZipOutputStream zos = null;
+				if (zipResult) {
+					zos = new ZipOutputStream(os);
+					zos.putNextEntry(new ZipEntry(entryName));
+					os = zos;
 				}
-				writer.writeNext(headers);
-			}
-			
-			for (IDataRow row : results.getRows()) {
-				String[] values = new String[tableSchema.getColumnCount()];
-				for (int i = 0; i < tableSchema.getColumnCount(); i++) {
-					Object value = row.getValue(getContext(), i);
-					if (value == null) {
-						values[i] = "";
-					} else {
-						if (value instanceof Date) {
-							values[i] = Long.toString(((Date) value).getTime()); // use timestamp to export for more precision than just seconds.
-						} else if (value instanceof IMendixIdentifier) {
-							values[i] = Long.toString(((IMendixIdentifier) value).toLong());
-						} else {
-							values[i] = value.toString();
-						}
-						if (this.removeNewLinesFromValues) {
-							values[i] = values[i].replaceAll("\r", " ").replaceAll("\n", "");
-						}
-					}
+				if (exportCheckpoint != null) {
+					Files.copy(exportCheckpoint.getOutputFile().toPath(), os);
+				} else if (workerCount != null && workerCount > 1) {
+					rowsExported.set(export.exportPartitioned(exportContext, exportStatement, parameters, keyColumn, workerCount.intValue(), os));
+				} else {
+					rowsExported.set(export.export(exportContext, 
+							new ResultPager(exportStatement, parameters, CSVExport.PAGE_SIZE, keyColumn), os));
+				}
+				if (zos != null) {
+					zos.finish();
 				}
-				writer.writeNext(values);
-			}
-			
-			if (results.getRowCount() != PAGE_SIZE) {
-				break;
 			}
-			offset += PAGE_SIZE;
+		});
+		if (exportCheckpoint != null) {
+			exportCheckpoint.getOutputFile().delete();
+			exportCheckpoint.reset();
+		}
+		if (exportWatermark != null) {
+			exportWatermark.advance(rowsExported.get());
 		}
-		writer.close();
-		result.setValue(getContext(), FileDocument.MemberNames.Name.toString(), tmpFile.getName());
-		Core.storeFileDocumentContent(getContext(), result, new FileInputStream(tmpFile));
-		tmpFile.delete();
 		OQL.resetParameters();
 		return result;
 		// END USER CODE
@@ -159,25 +189,5 @@ public class ExportOQLToCSV extends CustomJavaAction<IMendixObject>
 	}
 
 	// BEGIN EXTRA CODE
-	private IOQLTextGetRequest buildRequest(String statement, int offset, int pagesize) {
-		IOQLTextGetRequest request;
-		try {
-			request = Core.createOQLTextGetRequestFromDataSet(statement); 
-		} catch (IllegalArgumentException e) {
-			request = Core.createOQLTextGetRequest();
-			request.setQuery(statement);
-		}
-		
-		IParameterMap parameterMap = request.createParameterMap();
-		IRetrievalSchema schema = Core.createRetrievalSchema();
-		schema.setAmount(pagesize);
-		schema.setOffset(offset);
-		request.setRetrievalSchema(schema);
-		for (Entry<String, Object> entry : OQL.getNextParameters().entrySet()) {
-			parameterMap.put(entry.getKey(), entry.getValue());
-		}
-		request.setParameters(parameterMap);
-		return request;
-	}
 	// END EXTRA CODE
 }
@@ -0,0 +1,97 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import java.util.Collections;
+import com.mendix.core.Core;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.CSVExport;
+import oql.implementation.ExportJobs;
+import oql.implementation.OQL;
+import system.proxies.FileDocument;
+
+/**
+ * This action queues the export of the result of an OQL statement to a CSV file, see ExportOQLToCSV for the parameters.
+ * The export is executed in the background, so the microflow does not wait for it.
+ * 
+ * The result is stored in the given download (a CSVDownload or any other FileDocument), which should be committed. 
+ * When the download has these attributes, they are updated after every page of 10000 rows:
+ * - State (String or enumeration): Queued, Running, Completed, Failed or Cancelled
+ * - RowsWritten (Long), TotalRows (Long) and Progress (Integer, the percentage of TotalRows written)
+ * - Size: the amount of bytes written so far
+ * - ErrorMessage (String): the reason of a failed export
+ * 
+ * At most 2 exports are executed at the same time and at most 100 are waiting, see ConfigureOQLExportQueue. 
+ * Queued and running exports can be cancelled using CancelOQLExport. Exports interrupted by a restart of the runtime are 
+ * marked as Failed by RecoverOQLExports. When the statement cannot be counted, TotalRows and Progress are left empty.
+ */
+public class ExportOQLToCSVInBackground extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.String statement;
+	private IMendixObject download;
+	private java.lang.Boolean removeNewLinesFromValues;
+	private java.lang.Boolean zipResult;
+	private java.lang.Boolean exportHeaders;
+	private java.lang.String separatorChar;
+	private java.lang.String quoteChar;
+	private java.lang.String escapeChar;
+	private java.lang.String keyColumn;
+
+	public ExportOQLToCSVInBackground(IContext context, java.lang.String statement, IMendixObject download, java.lang.Boolean removeNewLinesFromValues, java.lang.Boolean zipResult, java.lang.Boolean exportHeaders, java.lang.String separatorChar, java.lang.String quoteChar, java.lang.String escapeChar, java.lang.String keyColumn)
+	{
+		super(context);
+		this.statement = statement;
+		this.download = download;
+		this.removeNewLinesFromValues = removeNewLinesFromValues;
+		this.zipResult = zipResult;
+		this.exportHeaders = exportHeaders;
+		this.separatorChar = separatorChar;
+		this.quoteChar = quoteChar;
+		this.escapeChar = escapeChar;
+		this.keyColumn = keyColumn;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		if (this.download.getValue(getContext(), FileDocument.MemberNames.Name.toString()) == null) {
+			String fileName = "Export" + System.currentTimeMillis() + ".csv";
+			if (this.zipResult) {
+				fileName += ".zip";
+			}
+			this.download.setValue(getContext(), FileDocument.MemberNames.Name.toString(), fileName);
+		}
+		OQL.setValues(getContext(), this.download, Collections.singletonMap(ExportJobs.STATE, ExportJobs.STATE_QUEUED));
+		Core.commit(getContext(), this.download);
+
+		CSVExport export = new CSVExport(this.separatorChar, this.quoteChar, this.escapeChar, 
+				this.removeNewLinesFromValues, this.exportHeaders);
+		ExportJobs.submit(getContext(), this.download, statement, OQL.getNextParameters(), keyColumn, export, this.zipResult);
+		OQL.resetParameters();
+		return true;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ExportOQLToCSVInBackground";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,102 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import com.mendix.core.Core;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.CSVExport;
+import oql.implementation.ExportPipe;
+import oql.implementation.JSONLExport;
+import oql.implementation.OQL;
+import oql.implementation.ResultPager;
+import system.proxies.FileDocument;
+
+/**
+ * This action exports the result of an OQL statement to a JSON Lines file (one JSON object per line, using the column 
+ * names as keys), retrieving the result in pages of 10000 rows.
+ * 
+ * Values keep their type: numbers and booleans are written as JSON numbers and booleans and dates as ISO 8601 
+ * timestamps in UTC (e.g. 2023-01-31T12:00:00.000Z). Ids are written as strings (e.g. "281474976710913"), as readers which 
+ * parse numbers as doubles (e.g. JavaScript) lose precision above 2^53; this also applies to Long values above 2^53. 
+ * When gzipResult is true, the file is gzip compressed.
+ * 
+ * When keyColumn is given (the alias of a unique, increasing column in the select list, typically the id of the main entity), 
+ * pages are retrieved using WHERE key > last key ORDER BY key instead of an offset, see ExportOQLToCSV.
+ */
+public class ExportOQLToJSONL extends CustomJavaAction<IMendixObject>
+{
+	private java.lang.String statement;
+	private java.lang.String returnEntity;
+	private java.lang.String keyColumn;
+	private java.lang.Boolean gzipResult;
+
+	public ExportOQLToJSONL(IContext context, java.lang.String statement, java.lang.String returnEntity, java.lang.String keyColumn, java.lang.Boolean gzipResult)
+	{
+		super(context);
+		this.statement = statement;
+		this.returnEntity = returnEntity;
+		this.keyColumn = keyColumn;
+		this.gzipResult = gzipResult;
+	}
+
+	@java.lang.Override
+	public IMendixObject executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		ILogNode logger = Core.getLogger(this.getClass().getSimpleName());
+		String fileName = "Export" + System.currentTimeMillis() + ".jsonl";
+		if (Boolean.TRUE.equals(this.gzipResult)) {
+			fileName += ".gz";
+		}
+
+		final JSONLExport export = new JSONLExport();
+		final ResultPager pager = new ResultPager(statement, OQL.getNextParameters(), CSVExport.PAGE_SIZE, keyColumn);
+		final IContext exportContext = getContext().createSudoClone();
+
+		IMendixObject result = Core.instantiate(getContext(), this.returnEntity);
+		result.setValue(getContext(), FileDocument.MemberNames.Name.toString(), fileName);
+
+		logger.debug("Executing query");
+
+		ExportPipe.store(getContext(), result, new ExportPipe.Producer() {
+			@Override
+			public void write(OutputStream os) throws Exception {
+				if (Boolean.TRUE.equals(gzipResult)) {
+					GZIPOutputStream gzip = new GZIPOutputStream(os, 64 * 1024);
+					export.export(exportContext, pager, gzip);
+					gzip.finish();
+				} else {
+					export.export(exportContext, pager, os);
+				}
+			}
+		});
+		OQL.resetParameters();
+		return result;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ExportOQLToJSONL";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
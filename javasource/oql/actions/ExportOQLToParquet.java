@@ -0,0 +1,91 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import java.io.OutputStream;
+import com.mendix.core.Core;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.CSVExport;
+import oql.implementation.ExportPipe;
+import oql.implementation.OQL;
+import oql.implementation.ParquetExport;
+import oql.implementation.ParquetWriter;
+import oql.implementation.ResultPager;
+import system.proxies.FileDocument;
+
+/**
+ * This action exports the result of an OQL statement to a Parquet file, retrieving the result in pages of 10000 rows.
+ * 
+ * Every column of the select list becomes a typed column in the file (booleans, integers, longs, decimals, 
+ * dates as timestamps, ids as longs and strings). Columns with few distinct values are dictionary and run length 
+ * encoded. Rows are written in row groups of 100000 rows; when compress is true every page is gzip compressed.
+ * 
+ * When keyColumn is given (the alias of a unique, increasing column in the select list, typically the id of the main entity), 
+ * pages are retrieved using WHERE key > last key ORDER BY key instead of an offset, see ExportOQLToCSV.
+ */
+public class ExportOQLToParquet extends CustomJavaAction<IMendixObject>
+{
+	private java.lang.String statement;
+	private java.lang.String returnEntity;
+	private java.lang.String keyColumn;
+	private java.lang.Boolean compress;
+
+	public ExportOQLToParquet(IContext context, java.lang.String statement, java.lang.String returnEntity, java.lang.String keyColumn, java.lang.Boolean compress)
+	{
+		super(context);
+		this.statement = statement;
+		this.returnEntity = returnEntity;
+		this.keyColumn = keyColumn;
+		this.compress = compress;
+	}
+
+	@java.lang.Override
+	public IMendixObject executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		ILogNode logger = Core.getLogger(this.getClass().getSimpleName());
+		String fileName = "Export" + System.currentTimeMillis() + ".parquet";
+
+		final ParquetExport export = new ParquetExport(Boolean.TRUE.equals(this.compress), ParquetWriter.DEFAULT_ROW_GROUP_SIZE);
+		final ResultPager pager = new ResultPager(statement, OQL.getNextParameters(), CSVExport.PAGE_SIZE, keyColumn);
+		final IContext exportContext = getContext().createSudoClone();
+
+		IMendixObject result = Core.instantiate(getContext(), this.returnEntity);
+		result.setValue(getContext(), FileDocument.MemberNames.Name.toString(), fileName);
+
+		logger.debug("Executing query");
+
+		ExportPipe.store(getContext(), result, new ExportPipe.Producer() {
+			@Override
+			public void write(OutputStream os) throws Exception {
+				export.export(exportContext, pager, os);
+			}
+		});
+		OQL.resetParameters();
+		return result;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ExportOQLToParquet";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
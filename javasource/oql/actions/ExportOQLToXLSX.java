@@ -0,0 +1,92 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import java.io.OutputStream;
+import com.mendix.core.Core;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.CSVExport;
+import oql.implementation.ExportPipe;
+import oql.implementation.OQL;
+import oql.implementation.ResultPager;
+import oql.implementation.XLSXExport;
+import oql.implementation.XLSXWriter;
+import system.proxies.FileDocument;
+
+/**
+ * This action exports the result of an OQL statement to an Excel (xlsx) file, retrieving the result in pages of 10000 rows.
+ * 
+ * Rows are written to the sheet as soon as they are retrieved, so memory usage does not depend on the size of the export.
+ * When a sheet reaches the Excel limit of 1048576 rows, the export continues on a new sheet (repeating the header row).
+ * Numbers, booleans and dates are written as typed cells, dates in UTC. Strings longer than the Excel limit of 32767 
+ * characters are truncated, which is logged as a warning.
+ * 
+ * When keyColumn is given (the alias of a unique, increasing column in the select list, typically the id of the main entity), 
+ * pages are retrieved using WHERE key > last key ORDER BY key instead of an offset, see ExportOQLToCSV.
+ */
+public class ExportOQLToXLSX extends CustomJavaAction<IMendixObject>
+{
+	private java.lang.String statement;
+	private java.lang.String returnEntity;
+	private java.lang.Boolean exportHeaders;
+	private java.lang.String keyColumn;
+
+	public ExportOQLToXLSX(IContext context, java.lang.String statement, java.lang.String returnEntity, java.lang.Boolean exportHeaders, java.lang.String keyColumn)
+	{
+		super(context);
+		this.statement = statement;
+		this.returnEntity = returnEntity;
+		this.exportHeaders = exportHeaders;
+		this.keyColumn = keyColumn;
+	}
+
+	@java.lang.Override
+	public IMendixObject executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		ILogNode logger = Core.getLogger(this.getClass().getSimpleName());
+		String fileName = "Export" + System.currentTimeMillis() + ".xlsx";
+
+		final XLSXExport export = new XLSXExport(Boolean.TRUE.equals(this.exportHeaders), XLSXWriter.MAX_ROWS_PER_SHEET);
+		final ResultPager pager = new ResultPager(statement, OQL.getNextParameters(), CSVExport.PAGE_SIZE, keyColumn);
+		final IContext exportContext = getContext().createSudoClone();
+
+		IMendixObject result = Core.instantiate(getContext(), this.returnEntity);
+		result.setValue(getContext(), FileDocument.MemberNames.Name.toString(), fileName);
+
+		logger.debug("Executing query");
+
+		ExportPipe.store(getContext(), result, new ExportPipe.Producer() {
+			@Override
+			public void write(OutputStream os) throws Exception {
+				export.export(exportContext, pager, os);
+			}
+		});
+		OQL.resetParameters();
+		return result;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "ExportOQLToXLSX";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
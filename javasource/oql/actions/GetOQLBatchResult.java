@@ -0,0 +1,51 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQLBatch;
+
+/**
+ * Returns the result of a statement of the last executed batch, using the index returned by AddOQLBatchStatement.
+ * The objects are of the result entity given when adding the statement.
+ */
+public class GetOQLBatchResult extends CustomJavaAction<java.util.List<IMendixObject>>
+{
+	private java.lang.Long index;
+
+	public GetOQLBatchResult(IContext context, java.lang.Long index)
+	{
+		super(context);
+		this.index = index;
+	}
+
+	@java.lang.Override
+	public java.util.List<IMendixObject> executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		return OQLBatch.get(getContext()).getResult(index.intValue());
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "GetOQLBatchResult";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,52 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQLJobs;
+
+/**
+ * Returns the result of a completed job started by ExecuteOQLStatementAsync as objects of its result entity.
+ * The job is removed afterwards, so the result can only be obtained once.
+ * Throws an exception when the job is still running, has failed or was cancelled.
+ */
+public class GetOQLJobResult extends CustomJavaAction<java.util.List<IMendixObject>>
+{
+	private java.lang.String handle;
+
+	public GetOQLJobResult(IContext context, java.lang.String handle)
+	{
+		super(context);
+		this.handle = handle;
+	}
+
+	@java.lang.Override
+	public java.util.List<IMendixObject> executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		return OQLJobs.fetch(getContext(), handle);
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "GetOQLJobResult";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,49 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQLJobs;
+
+/**
+ * Returns the status of a job started by ExecuteOQLStatementAsync: Running, Completed, Failed or Cancelled.
+ */
+public class GetOQLJobStatus extends CustomJavaAction<java.lang.String>
+{
+	private java.lang.String handle;
+
+	public GetOQLJobStatus(IContext context, java.lang.String handle)
+	{
+		super(context);
+		this.handle = handle;
+	}
+
+	@java.lang.Override
+	public java.lang.String executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		return OQLJobs.getStatus(getContext(), handle);
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "GetOQLJobStatus";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,61 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.MaterializedViews;
+import oql.implementation.OQL;
+
+/**
+ * Returns the status of all registered materialized views as objects of the given (non persistent) entity, one object per view.
+ * 
+ * The entity can have the following attributes: Name, TargetEntity, KeyColumn, WatermarkColumn, Watermark, LastError (String), 
+ * LastRefreshed (DateTime), LastDuration, LastRows, Staleness, Refreshes, Failures (Long, times in milliseconds) and Refreshing 
+ * (Boolean). Staleness is the time since the start of the last successful refresh. Attributes which are not present are skipped.
+ */
+public class GetOQLMaterializedViews extends CustomJavaAction<java.util.List<IMendixObject>>
+{
+	private java.lang.String returnEntity;
+
+	public GetOQLMaterializedViews(IContext context, java.lang.String returnEntity)
+	{
+		super(context);
+		this.returnEntity = returnEntity;
+	}
+
+	@java.lang.Override
+	public java.util.List<IMendixObject> executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		List<IMendixObject> result = new ArrayList<IMendixObject>();
+		for (MaterializedViews.View view : MaterializedViews.getViews()) {
+			result.add(OQL.createSummary(getContext(), returnEntity, view.toSummary()));
+		}
+		return result;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "GetOQLMaterializedViews";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
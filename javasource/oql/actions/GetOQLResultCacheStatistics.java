@@ -0,0 +1,53 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQL;
+import oql.implementation.ResultCache;
+
+/**
+ * Returns the statistics of the result cache as an object of the given (non persistent) entity.
+ * The entity can have the following attributes, all of type Long: Hits, Misses, Evictions, Invalidations, Entries and EstimatedSize (in bytes).
+ * Attributes which are not present are skipped.
+ */
+public class GetOQLResultCacheStatistics extends CustomJavaAction<IMendixObject>
+{
+	private java.lang.String returnEntity;
+
+	public GetOQLResultCacheStatistics(IContext context, java.lang.String returnEntity)
+	{
+		super(context);
+		this.returnEntity = returnEntity;
+	}
+
+	@java.lang.Override
+	public IMendixObject executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		return OQL.createSummary(getContext(), returnEntity, ResultCache.getInstance().getStatistics());
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "GetOQLResultCacheStatistics";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,59 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQL;
+import oql.implementation.SlowQueryLog;
+
+/**
+ * Returns the buffered slow executions, oldest first, as objects of the given (non persistent) entity.
+ * See ConfigureOQLSlowQueryLog for the attributes the entity can have.
+ */
+public class GetOQLSlowQueries extends CustomJavaAction<java.util.List<IMendixObject>>
+{
+	private java.lang.String returnEntity;
+
+	public GetOQLSlowQueries(IContext context, java.lang.String returnEntity)
+	{
+		super(context);
+		this.returnEntity = returnEntity;
+	}
+
+	@java.lang.Override
+	public java.util.List<IMendixObject> executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		List<IMendixObject> result = new ArrayList<IMendixObject>();
+		for (Map<String, Object> entry : SlowQueryLog.getEntries()) {
+			result.add(OQL.createSummary(getContext(), returnEntity, entry));
+		}
+		return result;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "GetOQLSlowQueries";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
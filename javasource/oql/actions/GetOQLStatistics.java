@@ -0,0 +1,62 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQL;
+import oql.implementation.OQLMetrics;
+
+/**
+ * Returns the statistics of all executed statements as objects of the given (non persistent) entity, one object per statement.
+ * Statements are grouped by their fingerprint: the statement with all literals and parameters replaced by a question mark.
+ * 
+ * The entity can have the following attributes: Statement (String, unlimited), Calls, Errors, Rows, QueryTime, MappingTime, 
+ * MaxQueryTime, AverageQueryTime, P50QueryTime, P95QueryTime and P99QueryTime (all Long, times in milliseconds).
+ * Attributes which are not present are skipped. Percentiles are the upper bound of the histogram bucket they fall in.
+ */
+public class GetOQLStatistics extends CustomJavaAction<java.util.List<IMendixObject>>
+{
+	private java.lang.String returnEntity;
+
+	public GetOQLStatistics(IContext context, java.lang.String returnEntity)
+	{
+		super(context);
+		this.returnEntity = returnEntity;
+	}
+
+	@java.lang.Override
+	public java.util.List<IMendixObject> executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		List<IMendixObject> result = new ArrayList<IMendixObject>();
+		for (OQLMetrics.StatementMetrics metrics : OQLMetrics.getMetrics()) {
+			result.add(OQL.createSummary(getContext(), returnEntity, metrics.toSummary()));
+		}
+		return result;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "GetOQLStatistics";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
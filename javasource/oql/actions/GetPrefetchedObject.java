@@ -0,0 +1,57 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.Prefetch;
+
+/**
+ * This action returns the object referred to by the association of the given object, using the objects retrieved by 
+ * PrefetchOQLAssociations. An object which has not been prefetched is retrieved (and kept for subsequent calls).
+ * - association: the name of the association, with or without its module (e.g. ExamplePersonResult_ExamplePerson)
+ */
+public class GetPrefetchedObject extends CustomJavaAction<IMendixObject>
+{
+	private IMendixObject object;
+	private java.lang.String association;
+
+	public GetPrefetchedObject(IContext context, IMendixObject object, java.lang.String association)
+	{
+		super(context);
+		this.object = object;
+		this.association = association;
+	}
+
+	@java.lang.Override
+	public IMendixObject executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		if (object == null) {
+			return null;
+		}
+		return Prefetch.get(getContext(), object, association);
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "GetPrefetchedObject";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
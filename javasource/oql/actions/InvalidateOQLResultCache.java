@@ -0,0 +1,51 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.ResultCache;
+
+/**
+ * Removes all cached results of statements using the given entity (e.g. 'MyFirstModule.Order') from the result cache.
+ * When no entity is given, the complete cache is cleared.
+ */
+public class InvalidateOQLResultCache extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.String entity;
+
+	public InvalidateOQLResultCache(IContext context, java.lang.String entity)
+	{
+		super(context);
+		this.entity = entity;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		ResultCache.getInstance().invalidate(entity != null && !entity.trim().isEmpty() ? entity.trim() : null);
+		return true;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "InvalidateOQLResultCache";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,76 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.Materializer;
+import oql.implementation.OQL;
+
+/**
+ * This action executes an OQL statement and stores its rows as objects of a persistent entity, e.g. to rebuild a snapshot 
+ * or summary table. Columns are mapped onto the target entity like ExecuteOQLStatement does. Rows are retrieved, 
+ * instantiated and committed per page, using one commit per page instead of one commit per object.
+ * - mode: Append (default) adds an object for every row, Replace deletes all existing objects of the target entity first, 
+ *   Upsert updates the object having the same value for the key column and only creates objects for new keys
+ * - keyColumn: the alias of a unique column used to retrieve the rows page by page (WHERE key > last key ORDER BY key). 
+ *   Required for Upsert, where it is also the name of the attribute holding the key. Without a key column, the statement 
+ *   should have an ORDER BY on unique columns, so rows are not skipped or repeated between pages.
+ * - withEvents: whether before/after commit (and delete) events are executed
+ * - pageSize: the amount of rows per page and commit (1000 by default)
+ * 
+ * All changes are made in the transaction of the calling microflow. Returns the amount of rows materialized.
+ */
+public class MaterializeOQLStatement extends CustomJavaAction<java.lang.Long>
+{
+	private java.lang.String statement;
+	private java.lang.String targetEntity;
+	private java.lang.String mode;
+	private java.lang.String keyColumn;
+	private java.lang.Boolean withEvents;
+	private java.lang.Long pageSize;
+
+	public MaterializeOQLStatement(IContext context, java.lang.String statement, java.lang.String targetEntity, java.lang.String mode, java.lang.String keyColumn, java.lang.Boolean withEvents, java.lang.Long pageSize)
+	{
+		super(context);
+		this.statement = statement;
+		this.targetEntity = targetEntity;
+		this.mode = mode;
+		this.keyColumn = keyColumn;
+		this.withEvents = withEvents;
+		this.pageSize = pageSize;
+	}
+
+	@java.lang.Override
+	public java.lang.Long executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		IContext context = getContext().createSudoClone();
+		Materializer materializer = new Materializer(targetEntity, mode, keyColumn, Boolean.TRUE.equals(withEvents),
+				pageSize != null && pageSize > 0 ? pageSize.intValue() : Materializer.DEFAULT_PAGE_SIZE);
+		long rows = materializer.materialize(context, statement, OQL.getNextParameters());
+		OQL.resetParameters();
+		return rows;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "MaterializeOQLStatement";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
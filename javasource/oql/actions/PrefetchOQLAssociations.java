@@ -0,0 +1,61 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.Prefetch;
+
+/**
+ * This action retrieves the objects referred to by the associations of the given objects (e.g. the result of 
+ * ExecuteOQLStatement or a page of StreamOQLStatement) using one retrieve per entity. Afterwards GetPrefetchedObject 
+ * returns these objects without querying the database, so showing a related object for every row takes two queries 
+ * instead of one query per row.
+ * 
+ * The prefetched objects are kept until the microflow (or request) ends or until the next call of this action, which 
+ * replaces them (so streaming pages only keeps the objects of the current page); at most 10000 objects are kept. 
+ * Objects which are committed afterwards are retrieved again by GetPrefetchedObject, but changes which have not been 
+ * committed are not visible in the prefetched objects. Returns the amount of objects retrieved.
+ */
+public class PrefetchOQLAssociations extends CustomJavaAction<java.lang.Long>
+{
+	private java.util.List<IMendixObject> objects;
+
+	public PrefetchOQLAssociations(IContext context, java.util.List<IMendixObject> objects)
+	{
+		super(context);
+		this.objects = objects;
+	}
+
+	@java.lang.Override
+	public java.lang.Long executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		if (objects == null) {
+			return 0L;
+		}
+		return (long) Prefetch.prefetch(getContext(), objects);
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "PrefetchOQLAssociations";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,53 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.ExportJobs;
+
+/**
+ * This action marks the downloads of the given entity (e.g. OQL.CSVDownload) which are still Queued or Running as Failed, 
+ * see ExportOQLToCSVInBackground. Background exports are lost when the runtime stops, so call this action from the 
+ * after startup microflow. Exports which are queued or running in this runtime are left alone.
+ * 
+ * Returns the amount of downloads marked as failed.
+ */
+public class RecoverOQLExports extends CustomJavaAction<java.lang.Long>
+{
+	private java.lang.String downloadEntity;
+
+	public RecoverOQLExports(IContext context, java.lang.String downloadEntity)
+	{
+		super(context);
+		this.downloadEntity = downloadEntity;
+	}
+
+	@java.lang.Override
+	public java.lang.Long executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		return (long) ExportJobs.recover(downloadEntity);
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "RecoverOQLExports";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
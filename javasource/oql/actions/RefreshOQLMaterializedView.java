@@ -0,0 +1,61 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.MaterializedViews;
+
+/**
+ * This action refreshes a materialized view registered by RegisterOQLMaterializedView, upserting the rows changed since the 
+ * previous refresh into its target entity. When no name is given, all registered views are refreshed. 
+ * A view which is still being refreshed (e.g. by a previous run of the scheduled event) is skipped.
+ * 
+ * Returns the amount of rows refreshed.
+ */
+public class RefreshOQLMaterializedView extends CustomJavaAction<java.lang.Long>
+{
+	private java.lang.String name;
+
+	public RefreshOQLMaterializedView(IContext context, java.lang.String name)
+	{
+		super(context);
+		this.name = name;
+	}
+
+	@java.lang.Override
+	public java.lang.Long executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		IContext context = getContext().createSudoClone();
+		if (name != null && !name.trim().isEmpty()) {
+			return Math.max(0, MaterializedViews.getView(name).refresh(context));
+		}
+		long rows = 0;
+		for (MaterializedViews.View view : MaterializedViews.getViews()) {
+			rows += Math.max(0, view.refresh(context));
+		}
+		return rows;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "RefreshOQLMaterializedView";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
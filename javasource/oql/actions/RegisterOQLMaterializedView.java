@@ -0,0 +1,81 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.MaterializedViews;
+import oql.implementation.OQL;
+
+/**
+ * This action registers an OQL statement as a materialized view: its rows are stored in a persistent target entity, which is 
+ * refreshed incrementally by RefreshOQLMaterializedView (e.g. from a scheduled event). Call this action from the after startup 
+ * microflow; parameters added before this action are used for every refresh.
+ * - keyColumn: the alias of the column (and name of the attribute) identifying a row, used to update existing objects
+ * - watermarkColumn: the alias of the column (and name of the attribute) which increases when the source of a row changes, 
+ *   e.g. MAX(O.changedDate) AS LastChange. A refresh only retrieves the rows with a watermark of at least the highest 
+ *   watermark in the target entity minus the safety lag.
+ * - withEvents: whether commit events of the target entity are executed
+ * - safetyLag: how far (in milliseconds for a DateTime watermark) a refresh reads back from the highest watermark, so rows 
+ *   of transactions which commit later than their watermark suggests are not missed. When empty, defaults to 60000 
+ *   for a DateTime watermark and to 0 for other watermarks (e.g. a Long sequence), as a lag in milliseconds means 
+ *   nothing for those.
+ * 
+ * The statement is wrapped to filter on the watermark. A statement using the parameter $OQLWatermark itself is executed 
+ * as is; it is empty on the first refresh. Do not use it to filter the rows of a grouping statement, as the changed groups 
+ * would then be replaced by aggregates of only their changed rows: select the keys of the changed groups with it instead, 
+ * so these groups are aggregated in full.
+ */
+public class RegisterOQLMaterializedView extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.String name;
+	private java.lang.String statement;
+	private java.lang.String targetEntity;
+	private java.lang.String keyColumn;
+	private java.lang.String watermarkColumn;
+	private java.lang.Boolean withEvents;
+	private java.lang.Long safetyLag;
+
+	public RegisterOQLMaterializedView(IContext context, java.lang.String name, java.lang.String statement, java.lang.String targetEntity, java.lang.String keyColumn, java.lang.String watermarkColumn, java.lang.Boolean withEvents, java.lang.Long safetyLag)
+	{
+		super(context);
+		this.name = name;
+		this.statement = statement;
+		this.targetEntity = targetEntity;
+		this.keyColumn = keyColumn;
+		this.watermarkColumn = watermarkColumn;
+		this.withEvents = withEvents;
+		this.safetyLag = safetyLag;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		MaterializedViews.register(name, statement, OQL.getNextParameters(), targetEntity, keyColumn, watermarkColumn,
+				Boolean.TRUE.equals(withEvents), safetyLag);
+		OQL.resetParameters();
+		return true;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "RegisterOQLMaterializedView";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
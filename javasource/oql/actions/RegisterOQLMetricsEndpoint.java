@@ -0,0 +1,55 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import com.mendix.core.Core;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQLMetricsHandler;
+
+/**
+ * Registers a request handler serving the statistics of all statements as plain text (Prometheus exposition format), 
+ * e.g. on path 'oql-metrics/'. Call this action from the after startup microflow.
+ * 
+ * The endpoint is not protected by the runtime, so restrict access to the path (e.g. using a request handler access restriction) 
+ * when the application is publicly reachable.
+ */
+public class RegisterOQLMetricsEndpoint extends CustomJavaAction<java.lang.Boolean>
+{
+	private java.lang.String path;
+
+	public RegisterOQLMetricsEndpoint(IContext context, java.lang.String path)
+	{
+		super(context);
+		this.path = path;
+	}
+
+	@java.lang.Override
+	public java.lang.Boolean executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		Core.addRequestHandler(path, new OQLMetricsHandler());
+		return true;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "RegisterOQLMetricsEndpoint";
+	}
+
+	// BEGIN EXTRA CODE
+	// END EXTRA CODE
+}
@@ -0,0 +1,111 @@
+// This file was generated by Mendix Studio Pro.
+//
+// WARNING: Only the following code will be retained when actions are regenerated:
+// - the import list
+// - the code between BEGIN USER CODE and END USER CODE
+// - the code between BEGIN EXTRA CODE and END EXTRA CODE
+// Other code you write will be lost the next time you deploy the project.
+// Special characters, e.g., é, ö, à, etc. are supported in comments.
+
+package oql.actions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.mendix.core.Core;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.webui.CustomJavaAction;
+import oql.implementation.OQL;
+
+/**
+ * This action executes a given OQL statement page by page instead of retrieving the complete result at once.
+ * Each page of rows is mapped to the result entity (the same way as ExecuteOQLStatement does) and handed to the given microflow.
+ * Memory usage therefore depends on the page size and not on the size of the result.
+ *
+ * The pages are retrieved by offset, so the statement requires an ORDER BY on unique columns (e.g. ORDER BY P.ID); 
+ * without it, the database may return the rows in a different order for every page, skipping some rows and repeating others.
+ * The parameters are reset (unless preserved) before the first page is handed to the microflow, so the microflow can 
+ * use OQL parameters for statements of its own.
+ *
+ * The microflow should accept one parameter: a list of the result entity. For example:
+ * 'MyFirstModule.ProcessReportRows'
+ *
+ * Returns the amount of rows processed.
+ */
+public class StreamOQLStatement extends CustomJavaAction<java.lang.Long>
+{
+	private java.lang.String statement;
+	private java.lang.String returnEntity;
+	private java.lang.Long pageSize;
+	private java.lang.String microflow;
+	private java.lang.Boolean preserveParameters;
+
+	public StreamOQLStatement(IContext context, java.lang.String statement, java.lang.String returnEntity, java.lang.Long pageSize, java.lang.String microflow, java.lang.Boolean preserveParameters)
+	{
+		super(context);
+		this.statement = statement;
+		this.returnEntity = returnEntity;
+		this.pageSize = pageSize;
+		this.microflow = microflow;
+		this.preserveParameters = preserveParameters;
+	}
+
+	@java.lang.Override
+	public java.lang.Long executeAction() throws Exception
+	{
+		// BEGIN USER CODE
+		final IContext context = getContext().createSudoClone();
+		final ILogNode logger = Core.getLogger(this.getClass().getSimpleName());
+		final int size = this.pageSize != null && this.pageSize > 0 ? this.pageSize.intValue() : DEFAULT_PAGE_SIZE;
+		final Map<String, ?> microflowParameters = Core.getInputParameters(this.microflow);
+		if (microflowParameters == null) {
+			throw new IllegalArgumentException("Microflow " + this.microflow + " does not exist.");
+		} else if (microflowParameters.size() != 1) {
+			throw new IllegalArgumentException("Microflow " + this.microflow + " should have exactly one parameter " +
+					"(a list of " + this.returnEntity + "), but has " + microflowParameters.size() + ".");
+		}
+		final String parameterName = microflowParameters.keySet().iterator().next();
+		final List<IMendixObject> page = new ArrayList<IMendixObject>(size);
+		final Map<String, Object> parameters = new HashMap<String, Object>(OQL.getNextParameters());
+
+		if (!this.preserveParameters)
+			OQL.resetParameters();
+
+		long count = OQL.streamOQL(context, statement, returnEntity, size, parameters,
+				new OQL.RowConsumer() {
+			@Override
+			public void accept(IMendixObject row) throws Exception {
+				page.add(row);
+				if (page.size() == size) {
+					logger.debug("Handing page of " + page.size() + " rows to " + microflow);
+					Core.microflowCall(microflow).withParam(parameterName, page).execute(context);
+					page.clear();
+				}
+			}
+		});
+		if (!page.isEmpty()) {
+			logger.debug("Handing page of " + page.size() + " rows to " + microflow);
+			Core.microflowCall(microflow).withParam(parameterName, page).execute(context);
+		}
+
+		return count;
+		// END USER CODE
+	}
+
+	/**
+	 * Returns a string representation of this action
+	 * @return a string representation of this action
+	 */
+	@java.lang.Override
+	public java.lang.String toString()
+	{
+		return "StreamOQLStatement";
+	}
+
+	// BEGIN EXTRA CODE
+	private static final int DEFAULT_PAGE_SIZE = 1000;
+	// END EXTRA CODE
+}
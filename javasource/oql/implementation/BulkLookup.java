@@ -0,0 +1,229 @@
+package oql.implementation;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.mendix.core.Core;
+import com.mendix.core.CoreException;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.systemwideinterfaces.core.meta.IMetaAssociation;
+
+/**
+ * Executes a statement for a list of keys using a few statements instead of one statement per key. The predicate
+ * comparing a column with the key parameter (e.g. P.Code = $Code) is rewritten to an IN predicate over a chunk of
+ * distinct keys (P.Code IN ($OQLKey0, $OQLKey1, ...)). Each result row is matched back to the inputs having its key
+ * using a column in the select list which holds the key.
+ */
+public class BulkLookup {
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+	public static final String KEY_PARAMETER_PREFIX = "OQLKey";
+
+	private static ILogNode logger = Core.getLogger(BulkLookup.class.getSimpleName());
+
+	private final String statement;
+	private final String keyParameter;
+	private final Pattern keyPredicate;
+	private final String keyColumn;
+	private final Map<String, Object> parameters;
+	private final int chunkSize;
+	private final boolean parallel;
+
+	public BulkLookup(String statement, String keyParameter, String keyColumn, Map<String, Object> parameters,
+			int chunkSize, boolean parallel) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size should be at least 1, got " + chunkSize);
+		}
+		if (keyParameter == null || keyParameter.trim().isEmpty()) {
+			throw new IllegalArgumentException("A key parameter is required, e.g. Code for P.Code = $Code");
+		}
+		if (keyColumn == null || keyColumn.trim().isEmpty()) {
+			throw new IllegalArgumentException("A key column is required to match the rows with the inputs");
+		}
+		keyParameter = keyParameter.trim();
+		this.keyParameter = keyParameter.startsWith("$") ? keyParameter.substring(1) : keyParameter;
+		// the lookbehind excludes comparisons such as >= $Key, which cannot be rewritten to IN.
+		this.keyPredicate = Pattern.compile("(?<![<>!])=\\s*\\$" + Pattern.quote(this.keyParameter) + "\\b");
+		this.keyColumn = keyColumn.trim();
+		this.parameters = new HashMap<String, Object>(parameters);
+		this.chunkSize = chunkSize;
+		this.parallel = parallel;
+		this.statement = OQL.resolveStatement(statement);
+	}
+
+	/**
+	 * Executes the statement for the keys of all inputs and maps every row to the result entity once for each
+	 * input with the key of that row, ordered by input. When an association from the result entity to the input
+	 * entity is given, every result object refers to its input.
+	 * @param keys the key of each input, either an attribute value or an id.
+	 */
+	public List<IMendixObject> execute(final IContext context, String returnEntity, List<IMendixObject> inputs,
+			List<Object> keys, String inputAssociation) throws CoreException {
+		Map<Object, Object> distinctKeys = new LinkedHashMap<Object, Object>();
+		for (Object key : keys) {
+			if (key != null) {
+				distinctKeys.put(normalize(key), key);
+			}
+		}
+		List<List<Object>> chunks = new ArrayList<List<Object>>();
+		List<Object> chunk = null;
+		for (Object key : distinctKeys.values()) {
+			if (chunk == null || chunk.size() == chunkSize) {
+				chunk = new ArrayList<Object>(chunkSize);
+				chunks.add(chunk);
+			}
+			chunk.add(key);
+		}
+		logger.debug("Executing " + chunks.size() + " chunks for " + distinctKeys.size() + " keys");
+
+		List<ResultCache.CachedResult> results = new ArrayList<ResultCache.CachedResult>();
+		if (parallel && chunks.size() > 1) {
+			List<Future<ResultCache.CachedResult>> futures = new ArrayList<Future<ResultCache.CachedResult>>();
+			for (final List<Object> keyChunk : chunks) {
+				// every chunk has its own transaction, as the transaction of the context is not thread safe.
+				final IContext chunkContext = OQL.createIndependentContext(context);
+				futures.add(OQLExecutor.submit(new Callable<ResultCache.CachedResult>() {
+					@Override
+					public ResultCache.CachedResult call() throws Exception {
+						return retrieve(chunkContext, keyChunk);
+					}
+				}));
+			}
+			try {
+				for (Future<ResultCache.CachedResult> future : futures) {
+					results.add(future.get());
+				}
+			} catch (ExecutionException e) {
+				cancel(futures);
+				throw new CoreException("Executing lookup failed: " + e.getCause().getMessage(), e.getCause());
+			} catch (InterruptedException e) {
+				cancel(futures);
+				Thread.currentThread().interrupt();
+				throw new CoreException("Executing lookup was interrupted", e);
+			}
+		} else {
+			for (List<Object> keyChunk : chunks) {
+				results.add(retrieve(context, keyChunk));
+			}
+		}
+
+		Map<Object, List<Object[]>> rowsByKey = new HashMap<Object, List<Object[]>>();
+		MappingPlan plan = null;
+		for (ResultCache.CachedResult result : results) {
+			plan = MappingPlan.get(result.getSchema(), returnEntity);
+			int keyIndex = ResultPager.getColumnIndex(result.getSchema(), keyColumn);
+			for (Object[] row : result.getRows()) {
+				Object key = normalize(row[keyIndex]);
+				List<Object[]> rows = rowsByKey.get(key);
+				if (rows == null) {
+					rows = new ArrayList<Object[]>();
+					rowsByKey.put(key, rows);
+				}
+				rows.add(row);
+			}
+		}
+
+		String association = null;
+		if (inputAssociation != null && !inputAssociation.trim().isEmpty()) {
+			IMetaAssociation metaAssociation = MappingPlan.getAssociation(Core.getMetaObject(returnEntity),
+					inputAssociation.substring(inputAssociation.indexOf('.') + 1));
+			if (metaAssociation == null) {
+				throw new IllegalArgumentException("Association " + inputAssociation + " is not an association of " +
+						returnEntity);
+			}
+			association = metaAssociation.getName();
+		}
+
+		List<IMendixObject> objects = new ArrayList<IMendixObject>();
+		for (int i = 0; i < inputs.size(); i++) {
+			List<Object[]> rows = keys.get(i) != null ? rowsByKey.get(normalize(keys.get(i))) : null;
+			if (rows == null) {
+				continue;
+			}
+			for (Object[] row : rows) {
+				IMendixObject object = plan.map(context, row);
+				if (association != null) {
+					object.setValue(context, association, inputs.get(i).getId());
+				}
+				objects.add(object);
+			}
+		}
+		return objects;
+	}
+
+	private ResultCache.CachedResult retrieve(IContext context, List<Object> keys) throws CoreException {
+		Map<String, Object> chunkParameters = new HashMap<String, Object>(parameters);
+		StringBuilder list = new StringBuilder();
+		for (int i = 0; i < keys.size(); i++) {
+			if (i > 0) {
+				list.append(", ");
+			}
+			list.append('$').append(KEY_PARAMETER_PREFIX).append(i);
+			chunkParameters.put(KEY_PARAMETER_PREFIX + i, keys.get(i));
+		}
+		String chunkStatement = rewrite(list.toString());
+		OQLMetrics.Measurement measurement = OQLMetrics.start(context, chunkStatement, chunkParameters);
+		try {
+			IDataTable table = Core.retrieveOQLDataTable(context, OQL.createRequest(chunkStatement, chunkParameters, 0, 0));
+			measurement.queried(table.getRowCount());
+			ResultCache.CachedResult result = new ResultCache.CachedResult(context, table);
+			measurement.completed();
+			return result;
+		} finally {
+			measurement.stop();
+		}
+	}
+
+	/**
+	 * Replaces the single "= $keyParameter" predicate of the statement by "IN (list)".
+	 */
+	private String rewrite(String list) {
+		Matcher matcher = keyPredicate.matcher(statement);
+		if (!matcher.find()) {
+			throw new IllegalArgumentException("The statement does not contain a predicate = $" + keyParameter);
+		}
+		String rewritten = statement.substring(0, matcher.start()) + "IN (" + list + ")" +
+				statement.substring(matcher.end());
+		if (matcher.find()) {
+			throw new IllegalArgumentException("The statement should contain only one predicate = $" + keyParameter);
+		}
+		return rewritten;
+	}
+
+	/**
+	 * @return the key in a form which is equal for equal keys of different types (e.g. an id and its object).
+	 */
+	static Object normalize(Object key) {
+		if (key instanceof IMendixObject) {
+			return ((IMendixObject) key).getId().toLong();
+		} else if (key instanceof IMendixIdentifier) {
+			return ((IMendixIdentifier) key).toLong();
+		} else if (key instanceof Integer || key instanceof Long || key instanceof Short) {
+			return ((Number) key).longValue();
+		} else if (key instanceof BigDecimal) {
+			return ((BigDecimal) key).stripTrailingZeros().toPlainString();
+		} else if (key instanceof Date) {
+			return ((Date) key).getTime();
+		}
+		return key;
+	}
+
+	private static void cancel(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package oql.implementation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.mendix.core.Core;
+import com.mendix.core.CoreException;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataColumnSchema;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataRow;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTableSchema;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+
+/**
+ * Writes the result of a statement as CSV, either sequentially or split over a number of worker threads.
+ */
+public class CSVExport {
+	public static final int PAGE_SIZE = 10000;
+
+	private static ILogNode logger = Core.getLogger(CSVExport.class.getSimpleName());
+
+	private final char separatorChar;
+	private final char quoteChar;
+	private final char escapeChar;
+	private final boolean removeNewLinesFromValues;
+	private final boolean exportHeaders;
+
+	public CSVExport(String separatorChar, String quoteChar, String escapeChar,
+			boolean removeNewLinesFromValues, boolean exportHeaders) {
+		this.separatorChar = separatorChar.charAt(0);
+		this.quoteChar = quoteChar != null ? quoteChar.charAt(0) : CSVRowWriter.NO_QUOTE_CHARACTER;
+		this.escapeChar = escapeChar != null ? escapeChar.charAt(0) : CSVRowWriter.NO_ESCAPE_CHARACTER;
+		this.removeNewLinesFromValues = removeNewLinesFromValues;
+		this.exportHeaders = exportHeaders;
+	}
+
+	/**
+	 * Writes all pages of the pager to the output stream. The stream is flushed but not closed.
+	 * @return the amount of rows written
+	 */
+	public long export(IContext context, ResultPager pager, OutputStream os) throws CoreException, IOException {
+		return export(context, pager, os, exportHeaders, null);
+	}
+
+	/**
+	 * Writes all pages of the pager to the output stream, calling the listener after every page has been written.
+	 * The stream is flushed but not closed.
+	 * @return the amount of rows written
+	 */
+	public long export(IContext context, ResultPager pager, OutputStream os, PageListener listener)
+			throws CoreException, IOException {
+		return export(context, pager, os, exportHeaders, listener);
+	}
+
+	/**
+	 * Writes the pages of the pager to the output file of the checkpoint, saving the checkpoint after every page.
+	 * When the checkpoint holds the progress of an earlier, interrupted export, the output file is truncated to
+	 * the last saved byte offset and the export continues after the last saved key (or amount of rows).
+	 * @return the amount of rows written by this and earlier executions
+	 */
+	public long exportResumable(IContext context, ResultPager pager, final ExportCheckpoint checkpoint)
+			throws CoreException, IOException {
+		File file = checkpoint.getOutputFile();
+		boolean resume = checkpoint.getByteOffset() > 0 && file.exists();
+		if (resume && file.length() < checkpoint.getByteOffset()) {
+			throw new CoreException("Cannot resume export, " + file + " is shorter than the checkpoint offset " +
+					checkpoint.getByteOffset());
+		}
+		try (FileOutputStream fos = new FileOutputStream(file, true)) {
+			final FileChannel channel = fos.getChannel();
+			if (resume) {
+				logger.info("Resuming export at row " + checkpoint.getRowsWritten() + " after key " +
+						checkpoint.getLastKey());
+				channel.truncate(checkpoint.getByteOffset());
+				pager.resumeAfter(checkpoint.getLastKey(), checkpoint.getRowsWritten());
+			} else {
+				channel.truncate(0);
+			}
+			export(context, pager, fos, exportHeaders && !resume, new PageListener() {
+				@Override
+				public void pageWritten(ResultPager pager) throws CoreException, IOException {
+					channel.force(false);
+					checkpoint.save(pager.getLastKey(), pager.getRowsRetrieved(), channel.size());
+				}
+			});
+		}
+		return pager.getRowsRetrieved();
+	}
+
+	private long export(IContext context, ResultPager pager, OutputStream os, boolean writeHeaders,
+			PageListener listener) throws CoreException, IOException {
+		CSVRowWriter writer = new CSVRowWriter(new OutputStreamWriter(os), separatorChar, quoteChar, escapeChar,
+				removeNewLinesFromValues);
+		IDataTable results;
+		boolean firstPage = true;
+		long rows = 0;
+		while ((results = pager.nextPage(context)) != null) {
+			IDataTableSchema tableSchema = results.getSchema();
+			int columnCount = tableSchema.getColumnCount();
+
+			if (writeHeaders && firstPage) {
+				for (IDataColumnSchema columnSchema : tableSchema.getColumnSchemas()) {
+					writer.writeValue(columnSchema.getName());
+				}
+				writer.endRow();
+			}
+
+			for (IDataRow row : results.getRows()) {
+				for (int i = 0; i < columnCount; i++) {
+					writer.writeValue(row.getValue(context, i));
+				}
+				writer.endRow();
+			}
+			rows += results.getRowCount();
+			firstPage = false;
+			if (listener != null) {
+				writer.flush();
+				listener.pageWritten(pager);
+			}
+		}
+		writer.flush();
+		return rows;
+	}
+
+	/**
+	 * Splits the key range of the statement into one partition per worker. Each partition is retrieved
+	 * and written concurrently into its own chunk file, after which the chunks are appended in key order
+	 * to the output stream. The stream is flushed but not closed.
+	 * The partitions are executed on the OQLExecutor, each in its own context (and transaction), so the amount of
+	 * workers is limited to its pool size and changes which have not been committed in the given context are not
+	 * exported.
+	 * @return the amount of rows written
+	 */
+	public long exportPartitioned(final IContext context, final String statement, final Map<String, Object> parameters,
+			final String keyColumn, int workers, OutputStream os) throws Exception {
+		Object[] range = new ResultPager(statement, parameters, PAGE_SIZE, keyColumn).getKeyRange(context);
+		workers = Math.min(workers, OQLExecutor.getPoolSize());
+		if (range == null || workers <= 1) {
+			return export(context, new ResultPager(statement, parameters, PAGE_SIZE, keyColumn), os);
+		}
+
+		long minKey = toLong(range[0]);
+		long maxKey = toLong(range[1]);
+		final boolean identifiers = range[0] instanceof IMendixIdentifier;
+		final long step = Math.max(1, (maxKey - minKey) / workers + 1);
+		logger.debug("Exporting keys " + minKey + " to " + maxKey + " using " + workers + " partitions of " + step);
+
+		final List<File> chunks = new ArrayList<File>();
+		List<Future<Long>> partitions = new ArrayList<Future<Long>>();
+		try {
+			for (int i = 0; i < workers; i++) {
+				// the first and last partition are left open, so keys outside the initial range are exported as well.
+				final Object fromKey = i == 0 ? null : toKey(minKey + i * step, identifiers);
+				final Object toKey = i == workers - 1 ? null : toKey(minKey + (i + 1) * step, identifiers);
+				final boolean writeHeaders = exportHeaders && i == 0;
+				final File chunk = File.createTempFile("ExportChunk", ".csv");
+				chunks.add(chunk);
+				final IContext partitionContext = OQL.createIndependentContext(context);
+				partitions.add(OQLExecutor.submit(new Callable<Long>() {
+					@Override
+					public Long call() throws Exception {
+						ResultPager pager = new ResultPager(statement, parameters, PAGE_SIZE, keyColumn)
+								.withRange(fromKey, toKey);
+						try (OutputStream chunkStream = new FileOutputStream(chunk)) {
+							return export(partitionContext, pager, chunkStream, writeHeaders, null);
+						}
+					}
+				}));
+			}
+
+			long rows = 0;
+			for (int i = 0; i < partitions.size(); i++) {
+				try {
+					rows += partitions.get(i).get();
+				} catch (ExecutionException e) {
+					throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+				Files.copy(chunks.get(i).toPath(), os);
+			}
+			os.flush();
+			return rows;
+		} finally {
+			for (Future<Long> partition : partitions) {
+				partition.cancel(true);
+			}
+			for (File chunk : chunks) {
+				chunk.delete();
+			}
+		}
+	}
+
+	public interface PageListener {
+		/**
+		 * Called after a page has been written and flushed to the output stream.
+		 */
+		void pageWritten(ResultPager pager) throws CoreException, IOException;
+	}
+
+	private static long toLong(Object key) {
+		if (key instanceof IMendixIdentifier) {
+			return ((IMendixIdentifier) key).toLong();
+		} else if (key instanceof Number) {
+			return ((Number) key).longValue();
+		}
+		throw new IllegalArgumentException("A partitioned export requires a numeric key column, got " +
+				(key != null ? key.getClass().getSimpleName() : null));
+	}
+
+	private static Object toKey(long key, boolean identifier) {
+		return identifier ? Core.createMendixIdentifier(key) : key;
+	}
+}
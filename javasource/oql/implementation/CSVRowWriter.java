@@ -0,0 +1,134 @@
+package oql.implementation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+
+/**
+ * Writes CSV rows value by value into a reusable buffer. Numbers, dates (as epoch milliseconds) and ids are written
+ * without creating strings, other values are quoted, escaped and stripped of new lines in a single pass.
+ *
+ * The output is the same as that of the opencsv CSVWriter with all values quoted: every value is surrounded by the
+ * quote character, in which the quote and escape characters are escaped. Without a quote character the separator
+ * and new lines are escaped as well.
+ */
+public class CSVRowWriter {
+	public static final char NO_QUOTE_CHARACTER = '\u0000';
+	public static final char NO_ESCAPE_CHARACTER = '\u0000';
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	private final Writer writer;
+	private final char separatorChar;
+	private final char quoteChar;
+	private final char escapeChar;
+	private final boolean removeNewLines;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private final char[] digits = new char[20];
+	private int position = 0;
+	private boolean firstValue = true;
+
+	public CSVRowWriter(Writer writer, char separatorChar, char quoteChar, char escapeChar, boolean removeNewLines) {
+		this.writer = writer;
+		this.separatorChar = separatorChar;
+		this.quoteChar = quoteChar;
+		this.escapeChar = escapeChar;
+		this.removeNewLines = removeNewLines;
+	}
+
+	/**
+	 * Adds a value to the current row, null values are written as empty values.
+	 */
+	public void writeValue(Object value) throws IOException {
+		if (!firstValue) {
+			put(separatorChar);
+		}
+		firstValue = false;
+		if (quoteChar != NO_QUOTE_CHARACTER) {
+			put(quoteChar);
+		}
+		if (value == null) {
+			// empty value
+		} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			appendLong(((Number) value).longValue());
+		} else if (value instanceof Date) {
+			appendLong(((Date) value).getTime()); // use timestamp to export for more precision than just seconds.
+		} else if (value instanceof IMendixIdentifier) {
+			appendLong(((IMendixIdentifier) value).toLong());
+		} else if (value instanceof Boolean) {
+			appendString((Boolean) value ? "true" : "false");
+		} else {
+			appendString(value.toString());
+		}
+		if (quoteChar != NO_QUOTE_CHARACTER) {
+			put(quoteChar);
+		}
+	}
+
+	public void endRow() throws IOException {
+		put('\r');
+		put('\n');
+		firstValue = true;
+	}
+
+	public void flush() throws IOException {
+		writer.write(buffer, 0, position);
+		position = 0;
+		writer.flush();
+	}
+
+	private void appendString(String value) throws IOException {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (removeNewLines) {
+				if (c == '\r') {
+					c = ' ';
+				} else if (c == '\n') {
+					continue;
+				}
+			}
+			append(c);
+		}
+	}
+
+	private void appendLong(long value) throws IOException {
+		if (value < 0) {
+			append('-');
+		} else {
+			value = -value;
+		}
+		// use the negative value, as Long.MIN_VALUE has no positive counterpart.
+		int start = digits.length;
+		do {
+			digits[--start] = (char) ('0' - value % 10);
+			value /= 10;
+		} while (value != 0);
+		for (int i = start; i < digits.length; i++) {
+			append(digits[i]);
+		}
+	}
+
+	private void append(char c) throws IOException {
+		if (escapeChar != NO_ESCAPE_CHARACTER && mustEscape(c)) {
+			put(escapeChar);
+		}
+		put(c);
+	}
+
+	private boolean mustEscape(char c) {
+		if (quoteChar == NO_QUOTE_CHARACTER) {
+			return c == quoteChar || c == escapeChar || c == separatorChar || c == '\n';
+		}
+		return c == quoteChar || c == escapeChar;
+	}
+
+	private void put(char c) throws IOException {
+		if (position == buffer.length) {
+			writer.write(buffer, 0, position);
+			position = 0;
+		}
+		buffer[position++] = c;
+	}
+}
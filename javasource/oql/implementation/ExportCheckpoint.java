@@ -0,0 +1,174 @@
+package oql.implementation;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.Date;
+
+import com.mendix.core.Core;
+import com.mendix.core.CoreException;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+
+/**
+ * Progress of a resumable export, kept in an object of any entity with the following attributes:
+ * LastKey (String), RowsWritten (Long), ByteOffset (Long) and OutputPath (String). LastKey is only required when
+ * paging by a key column, as an export paged by offset resumes after RowsWritten rows.
+ *
+ * Every save is committed in its own transaction, so the progress survives a restart of the runtime even though
+ * the microflow executing the export is rolled back. This requires the checkpoint object to be committed before
+ * the export starts; otherwise the progress is only stored in the context of the export itself.
+ */
+public class ExportCheckpoint {
+	public static final String LAST_KEY = "LastKey";
+	public static final String ROWS_WRITTEN = "RowsWritten";
+	public static final String BYTE_OFFSET = "ByteOffset";
+	public static final String OUTPUT_PATH = "OutputPath";
+
+	private static ILogNode logger = Core.getLogger(ExportCheckpoint.class.getSimpleName());
+
+	private final IContext context;
+	private final IMendixObject checkpoint;
+	private Object lastKey;
+	private long rowsWritten;
+	private long byteOffset;
+	private String outputPath;
+
+	public ExportCheckpoint(IContext context, IMendixObject checkpoint, boolean keyset) {
+		this.context = context;
+		this.checkpoint = checkpoint;
+		if (keyset) {
+			requireMember(LAST_KEY, "String");
+		}
+		requireMember(ROWS_WRITTEN, "Long");
+		requireMember(BYTE_OFFSET, "Long");
+		requireMember(OUTPUT_PATH, "String");
+		this.lastKey = decodeKey((String) getValue(LAST_KEY));
+		this.rowsWritten = getValue(ROWS_WRITTEN) != null ? ((Number) getValue(ROWS_WRITTEN)).longValue() : 0;
+		this.byteOffset = getValue(BYTE_OFFSET) != null ? ((Number) getValue(BYTE_OFFSET)).longValue() : 0;
+		this.outputPath = (String) getValue(OUTPUT_PATH);
+	}
+
+	public Object getLastKey() {
+		return lastKey;
+	}
+
+	public long getRowsWritten() {
+		return rowsWritten;
+	}
+
+	public long getByteOffset() {
+		return byteOffset;
+	}
+
+	/**
+	 * @return the file holding the output written so far. When the checkpoint has no output path yet, a file in
+	 * the temporary directory is used, which does not survive a restart of a container.
+	 */
+	public File getOutputFile() throws CoreException {
+		if (outputPath == null || outputPath.trim().isEmpty()) {
+			outputPath = new File(System.getProperty("java.io.tmpdir"),
+					"Export" + checkpoint.getId().toLong() + ".partial").getAbsolutePath();
+			save();
+		}
+		return new File(outputPath);
+	}
+
+	public void save(Object lastKey, long rowsWritten, long byteOffset) throws CoreException {
+		this.lastKey = lastKey;
+		this.rowsWritten = rowsWritten;
+		this.byteOffset = byteOffset;
+		save();
+	}
+
+	/**
+	 * Clears the progress after the export has been completed, so the checkpoint can be used for a new export.
+	 */
+	public void reset() throws CoreException {
+		this.lastKey = null;
+		this.rowsWritten = 0;
+		this.byteOffset = 0;
+		this.outputPath = null;
+		save();
+	}
+
+	private void save() throws CoreException {
+		setValues(context, checkpoint);
+		IContext checkpointContext = Core.createSystemContext();
+		IMendixObject committed = Core.retrieveId(checkpointContext, checkpoint.getId());
+		if (committed != null) {
+			setValues(checkpointContext, committed);
+			Core.commit(checkpointContext, committed);
+		} else {
+			logger.warn("Checkpoint " + checkpoint.getId().toLong() + " has not been committed yet, " +
+					"its progress is lost when the export is interrupted.");
+			Core.commit(context, checkpoint);
+		}
+	}
+
+	private void setValues(IContext context, IMendixObject object) {
+		setValue(context, object, LAST_KEY, encodeKey(lastKey));
+		setValue(context, object, ROWS_WRITTEN, rowsWritten);
+		setValue(context, object, BYTE_OFFSET, byteOffset);
+		setValue(context, object, OUTPUT_PATH, outputPath);
+	}
+
+	private void requireMember(String member, String type) {
+		if (!checkpoint.hasMember(member)) {
+			throw new IllegalArgumentException("Checkpoint object of " + checkpoint.getMetaObject().getName() +
+					" should have a " + type + " attribute " + member + " to resume the export.");
+		}
+	}
+
+	private Object getValue(String member) {
+		return checkpoint.hasMember(member) ? checkpoint.getValue(context, member) : null;
+	}
+
+	private static void setValue(IContext context, IMendixObject object, String member, Object value) {
+		if (object.hasMember(member)) {
+			object.setValue(context, member, value);
+		}
+	}
+
+	/**
+	 * Stores the type of the key with its value, so it is passed to the statement with the same type after resuming.
+	 */
+	static String encodeKey(Object key) {
+		if (key == null) {
+			return null;
+		} else if (key instanceof IMendixIdentifier) {
+			return "id:" + ((IMendixIdentifier) key).toLong();
+		} else if (key instanceof Date) {
+			return "date:" + ((Date) key).getTime();
+		} else if (key instanceof Long || key instanceof Integer) {
+			return "long:" + key;
+		} else if (key instanceof BigDecimal) {
+			return "decimal:" + ((BigDecimal) key).toPlainString();
+		}
+		return "string:" + key;
+	}
+
+	static Object decodeKey(String key) {
+		if (key == null || key.isEmpty()) {
+			return null;
+		}
+		int separator = key.indexOf(':');
+		String type = separator >= 0 ? key.substring(0, separator) : "";
+		String value = key.substring(separator + 1);
+		switch (type) {
+		case "id":
+			return Core.createMendixIdentifier(Long.parseLong(value));
+		case "date":
+			return new Date(Long.parseLong(value));
+		case "long":
+			return Long.parseLong(value);
+		case "decimal":
+			return new BigDecimal(value);
+		case "string":
+			return value;
+		default:
+			throw new IllegalArgumentException("Invalid key in checkpoint: " + key);
+		}
+	}
+}
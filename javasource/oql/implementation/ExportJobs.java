@@ -0,0 +1,347 @@
+package oql.implementation;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.mendix.core.Core;
+import com.mendix.core.CoreException;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.systemwideinterfaces.core.meta.IMetaObject;
+
+/**
+ * Executes CSV exports in the background, a bounded amount at a time, storing the result in a file document
+ * (e.g. a CSVDownload). While the export is running, the following attributes of the file document are updated
+ * after every page when they exist: State (Queued, Running, Completed, Failed or Cancelled), RowsWritten,
+ * TotalRows, Progress (percentage of TotalRows), Size (bytes written so far) and ErrorMessage.
+ *
+ * The file document should be committed before the export is submitted. The export waits until the transaction
+ * of the submitting microflow has ended, as the file document is not visible before that.
+ *
+ * Exports are kept in memory only, so exports which were queued or running when the runtime stopped are never
+ * completed; call recover from the after startup microflow to mark their file documents as failed.
+ */
+public class ExportJobs {
+	public static final String STATE_QUEUED = "Queued";
+	public static final String STATE_RUNNING = "Running";
+	public static final String STATE_COMPLETED = "Completed";
+	public static final String STATE_FAILED = "Failed";
+	public static final String STATE_CANCELLED = "Cancelled";
+
+	public static final String STATE = "State";
+	public static final String ROWS_WRITTEN = "RowsWritten";
+	public static final String TOTAL_ROWS = "TotalRows";
+	public static final String PROGRESS = "Progress";
+	public static final String SIZE = "Size";
+	public static final String ERROR_MESSAGE = "ErrorMessage";
+
+	public static final int DEFAULT_MAX_CONCURRENT_EXPORTS = 2;
+	public static final int DEFAULT_MAX_QUEUED_EXPORTS = 100;
+
+	// how long to wait for the transaction which submitted the export to end.
+	private static final long VISIBILITY_TIMEOUT = 5 * 60 * 1000;
+	private static final long VISIBILITY_INTERVAL = 500;
+
+	private static ILogNode logger = Core.getLogger(ExportJobs.class.getSimpleName());
+
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_MAX_CONCURRENT_EXPORTS,
+			DEFAULT_MAX_CONCURRENT_EXPORTS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "OQL-Export-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	private static final Map<Long, Job> jobs = new ConcurrentHashMap<Long, Job>();
+	private static volatile int maxQueuedExports = DEFAULT_MAX_QUEUED_EXPORTS;
+
+	public static synchronized void setMaxConcurrentExports(int maxConcurrentExports) {
+		if (maxConcurrentExports < 1) {
+			throw new IllegalArgumentException("The maximum amount of concurrent exports should be at least 1, got " +
+					maxConcurrentExports);
+		}
+		if (maxConcurrentExports > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(maxConcurrentExports);
+			executor.setCorePoolSize(maxConcurrentExports);
+		} else {
+			executor.setCorePoolSize(maxConcurrentExports);
+			executor.setMaximumPoolSize(maxConcurrentExports);
+		}
+	}
+
+	public static void setMaxQueuedExports(int maxQueued) {
+		if (maxQueued < 0) {
+			throw new IllegalArgumentException("The maximum amount of queued exports should not be negative, got " +
+					maxQueued);
+		}
+		maxQueuedExports = maxQueued;
+	}
+
+	/**
+	 * Queues the export of the statement into the file document.
+	 */
+	public static synchronized void submit(IContext context, IMendixObject fileDocument, String statement,
+			Map<String, Object> parameters, String keyColumn, CSVExport export, boolean zipResult) throws CoreException {
+		if (executor.getQueue().size() >= maxQueuedExports) {
+			throw new CoreException("The export queue is full, " + executor.getQueue().size() + " exports are waiting.");
+		}
+		long id = fileDocument.getId().toLong();
+		if (jobs.containsKey(id)) {
+			throw new CoreException("An export into file document " + id + " is already queued or running.");
+		}
+		Job job = new Job(OQL.getUserName(context), fileDocument.getId(), statement, parameters, keyColumn, export,
+				zipResult);
+		jobs.put(id, job);
+		job.future = executor.submit(job);
+		logger.debug("Queued export " + id + ", " + executor.getQueue().size() + " exports waiting");
+	}
+
+	/**
+	 * Cancels a queued or running export submitted by the user of the context.
+	 * @return false if there is no such export.
+	 */
+	public static boolean cancel(IContext context, IMendixIdentifier fileDocument) {
+		Job job = jobs.get(fileDocument.toLong());
+		if (job == null) {
+			return false;
+		}
+		if (!job.user.equals(OQL.getUserName(context))) {
+			logger.warn("User " + OQL.getUserName(context) + " is not allowed to cancel export " + fileDocument.toLong() +
+					" of " + job.user);
+			return false;
+		}
+		job.cancelled = true;
+		Future<?> future = job.future;
+		if (future != null && future.cancel(true) && !job.started) {
+			// the export never started, so it will not update its state itself.
+			jobs.remove(fileDocument.toLong());
+			executor.purge();
+			job.update(STATE, STATE_CANCELLED);
+		}
+		return true;
+	}
+
+	/**
+	 * Marks the file documents of the entity which are still Queued or Running, but not queued or running in this
+	 * runtime, as Failed.
+	 * @return the amount of file documents marked as failed.
+	 */
+	public static int recover(String entity) throws CoreException {
+		IMetaObject meta = Core.getMetaObject(entity);
+		if (meta == null || meta.getMetaPrimitive(STATE) == null) {
+			throw new IllegalArgumentException("Entity " + entity + " should have an attribute " + STATE);
+		}
+		IContext context = Core.createSystemContext();
+		List<IMendixObject> documents = Core.createXPathQuery("//" + entity + "[" + STATE + " = '" + STATE_QUEUED +
+				"' or " + STATE + " = '" + STATE_RUNNING + "']").execute(context);
+		Map<String, Object> failure = new LinkedHashMap<String, Object>();
+		failure.put(STATE, STATE_FAILED);
+		failure.put(ERROR_MESSAGE, "The export was interrupted by a restart of the runtime.");
+		List<IMendixObject> interrupted = new ArrayList<IMendixObject>();
+		for (IMendixObject document : documents) {
+			if (!jobs.containsKey(document.getId().toLong())) {
+				OQL.setValues(context, document, failure);
+				interrupted.add(document);
+			}
+		}
+		if (!interrupted.isEmpty()) {
+			Core.commit(context, interrupted);
+			logger.info("Marked " + interrupted.size() + " interrupted exports into " + entity + " as failed");
+		}
+		return interrupted.size();
+	}
+
+	private static class Job implements Runnable {
+		private final String user;
+		private final IMendixIdentifier fileDocument;
+		private final String statement;
+		private final Map<String, Object> parameters;
+		private final String keyColumn;
+		private final CSVExport export;
+		private final boolean zipResult;
+		private volatile Future<?> future;
+		private volatile boolean started = false;
+		private volatile boolean cancelled = false;
+
+		Job(String user, IMendixIdentifier fileDocument, String statement, Map<String, Object> parameters,
+				String keyColumn, CSVExport export, boolean zipResult) {
+			this.user = user;
+			this.fileDocument = fileDocument;
+			this.statement = statement;
+			this.parameters = new HashMap<String, Object>(parameters);
+			this.keyColumn = keyColumn;
+			this.export = export;
+			this.zipResult = zipResult;
+		}
+
+		@Override
+		public void run() {
+			started = true;
+			try {
+				IContext context = Core.createSystemContext();
+				IMendixObject document = awaitFileDocument(context);
+				if (cancelled) {
+					throw new InterruptedException();
+				}
+				update(STATE, STATE_RUNNING);
+				final long totalRows = countRows(context);
+				if (totalRows >= 0) {
+					update(TOTAL_ROWS, totalRows);
+				}
+				String name = document.getValue(context, "Name");
+				final String entryName = name != null ? name.replaceAll(".zip", "") : "Export.csv";
+				final IContext exportContext = Core.createSystemContext();
+
+				ExportPipe.store(context, document, new ExportPipe.Producer() {
+					@Override
+					public void write(OutputStream os) throws Exception {
+						final CountingOutputStream counter = new CountingOutputStream(os);
+						os = counter;
+						ZipOutputStream zos = null;
+						if (zipResult) {
+							zos = new ZipOutputStream(os);
+							zos.putNextEntry(new ZipEntry(entryName));
+							os = zos;
+						}
+						ResultPager pager = new ResultPager(statement, parameters, CSVExport.PAGE_SIZE, keyColumn);
+						export.export(exportContext, pager, os, new CSVExport.PageListener() {
+							@Override
+							public void pageWritten(ResultPager pager) throws CoreException, IOException {
+								if (cancelled) {
+									throw new InterruptedIOException("Export has been cancelled");
+								}
+								Map<String, Object> progress = new LinkedHashMap<String, Object>();
+								progress.put(ROWS_WRITTEN, pager.getRowsRetrieved());
+								if (totalRows >= 0) {
+									progress.put(PROGRESS, totalRows > 0 ?
+											Math.min(100, pager.getRowsRetrieved() * 100 / totalRows) : 0L);
+								}
+								progress.put(SIZE, counter.count);
+								update(progress);
+							}
+						});
+						if (zos != null) {
+							zos.finish();
+						}
+					}
+				});
+				Map<String, Object> completed = new LinkedHashMap<String, Object>();
+				completed.put(STATE, STATE_COMPLETED);
+				completed.put(PROGRESS, 100L);
+				update(completed);
+				logger.debug("Completed export " + fileDocument.toLong());
+			} catch (Exception e) {
+				// clear the interrupt of a cancellation, so the state can still be stored.
+				Thread.interrupted();
+				if (cancelled) {
+					logger.debug("Cancelled export " + fileDocument.toLong());
+					update(STATE, STATE_CANCELLED);
+				} else {
+					logger.error("Export " + fileDocument.toLong() + " failed: " + e.getMessage(), e);
+					Map<String, Object> failure = new LinkedHashMap<String, Object>();
+					failure.put(STATE, STATE_FAILED);
+					failure.put(ERROR_MESSAGE, e.getMessage());
+					update(failure);
+				}
+			} finally {
+				jobs.remove(fileDocument.toLong());
+			}
+		}
+
+		/**
+		 * @return the amount of rows to export, or -1 when the statement cannot be counted (e.g. an ORDER BY in a
+		 * subquery is not allowed by SQL Server), in which case the export continues without progress.
+		 */
+		private long countRows(IContext context) {
+			try {
+				return OQL.countRowsOQL(context, statement, 0L, parameters);
+			} catch (Exception e) {
+				logger.warn("Could not count the rows of export " + fileDocument.toLong() + ", exporting without " +
+						"progress: " + e.getMessage());
+				return -1;
+			}
+		}
+
+		private IMendixObject awaitFileDocument(IContext context) throws CoreException, InterruptedException {
+			long deadline = System.currentTimeMillis() + VISIBILITY_TIMEOUT;
+			IMendixObject document;
+			while ((document = Core.retrieveId(context, fileDocument)) == null) {
+				if (System.currentTimeMillis() > deadline) {
+					throw new CoreException("File document " + fileDocument.toLong() + " has not been committed.");
+				}
+				Thread.sleep(VISIBILITY_INTERVAL);
+			}
+			return document;
+		}
+
+		private void update(String member, Object value) {
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put(member, value);
+			update(values);
+		}
+
+		/**
+		 * Sets the values on the existing attributes of the file document and commits it in its own transaction.
+		 */
+		private void update(Map<String, Object> values) {
+			try {
+				IContext context = Core.createSystemContext();
+				IMendixObject document = Core.retrieveId(context, fileDocument);
+				if (document == null) {
+					return;
+				}
+				OQL.setValues(context, document, values);
+				Core.commit(context, document);
+			} catch (Exception e) {
+				logger.warn("Could not update progress of export " + fileDocument.toLong() + ": " + e.getMessage(), e);
+			}
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		private volatile long count = 0;
+
+		CountingOutputStream(OutputStream os) {
+			super(os);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
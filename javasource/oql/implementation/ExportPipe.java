@@ -0,0 +1,110 @@
+package oql.implementation;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mendix.core.Core;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+
+/**
+ * Stores the output of an export directly as the content of a file document. The export is written by a producer
+ * thread into a bounded pipe, which is read by the file storage at the same time, so the export is never written
+ * to (and read back from) a temporary file.
+ */
+public class ExportPipe {
+	public static final int BUFFER_SIZE = 1024 * 1024;
+
+	private static ILogNode logger = Core.getLogger(ExportPipe.class.getSimpleName());
+	private static final AtomicInteger count = new AtomicInteger();
+
+	public interface Producer {
+		/**
+		 * Writes the export to the stream. The stream is closed afterwards.
+		 */
+		void write(OutputStream os) throws Exception;
+	}
+
+	/**
+	 * Runs the producer on a separate thread and stores everything it writes as the content of the file document.
+	 * When the producer fails, storing the content fails with the same error.
+	 *
+	 * The producer should query with a sudo clone of the calling context, so it shares its transaction and the
+	 * export includes the changes the calling microflow has not committed yet. The calling thread only reads the
+	 * pipe while the producer runs, so the transaction is not used by both threads at the same time.
+	 */
+	public static void store(IContext context, IMendixObject fileDocument, final Producer producer) throws Exception {
+		final PipedInputStream pipe = new PipedInputStream(BUFFER_SIZE);
+		final PipedOutputStream os = new PipedOutputStream(pipe);
+		final ProducerInputStream is = new ProducerInputStream(pipe);
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					producer.write(os);
+				} catch (Throwable e) {
+					is.failure = e;
+				} finally {
+					try {
+						os.close();
+					} catch (IOException e) {
+						logger.debug("Closing pipe failed: " + e.getMessage());
+					}
+				}
+			}
+		}, "OQL-ExportPipe-" + count.incrementAndGet());
+		thread.setDaemon(true);
+		thread.start();
+
+		try {
+			Core.storeFileDocumentContent(context, fileDocument, is);
+			// the storage might stop reading before the end of the stream, wait for the producer in that case.
+			is.close();
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw e;
+		} finally {
+			// unblocks the producer when storing failed.
+			pipe.close();
+		}
+		if (is.failure != null) {
+			throw is.failure instanceof Exception ? (Exception) is.failure : new RuntimeException(is.failure);
+		}
+	}
+
+	/**
+	 * Reports a failure of the producer to the reader, instead of the (premature) end of the stream.
+	 */
+	private static class ProducerInputStream extends FilterInputStream {
+		private volatile Throwable failure = null;
+
+		ProducerInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			return check(super.read());
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return check(super.read(b, off, len));
+		}
+
+		private int check(int result) throws IOException {
+			if (result < 0 && failure != null) {
+				throw new IOException("Export failed: " + failure.getMessage(), failure);
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package oql.implementation;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Map;
+
+import com.mendix.core.Core;
+import com.mendix.core.CoreException;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+
+/**
+ * Watermark of an incremental export, kept in an object of any entity with the following attributes:
+ * Watermark (String), LastExported (DateTime) and RowsExported (Long).
+ *
+ * An export only contains the rows whose watermark column (e.g. a changed date or an id) is greater than the stored
+ * watermark and at most an upper bound, which is the highest value present when the export starts held back by a lag:
+ * for a DateTime column at most the start of the export minus the lag (in milliseconds), otherwise the highest value
+ * minus the lag. The watermark is advanced to that upper bound in the transaction which stores the file, so it only
+ * moves when the file has been stored. Rows without a watermark are not exported.
+ *
+ * A row whose transaction commits after a row with a higher watermark has been exported is skipped when its own
+ * watermark is at or below the upper bound of that export. The lag prevents this for transactions which take less
+ * than the lag to commit, so it should exceed the duration of the longest transaction changing the rows.
+ */
+public class ExportWatermark {
+	public static final String WATERMARK = "Watermark";
+	public static final String LAST_EXPORTED = "LastExported";
+	public static final String ROWS_EXPORTED = "RowsExported";
+
+	public static final String FROM_PARAMETER = "OQLWatermarkFrom";
+	public static final String TO_PARAMETER = "OQLWatermarkTo";
+	public static final String CHANGES_ALIAS = "OQLChanges";
+	public static final long DEFAULT_DATE_LAG = 60 * 1000;
+
+	private static ILogNode logger = Core.getLogger(ExportWatermark.class.getSimpleName());
+
+	private final IContext context;
+	private final IMendixObject watermark;
+	private final String watermarkColumn;
+	private final Long lag;
+	private final Object from;
+	private Object to;
+
+	/**
+	 * @param lag the amount by which the upper bound is held back, in milliseconds for a DateTime column. When empty,
+	 * DEFAULT_DATE_LAG is used for a DateTime column and 0 otherwise.
+	 */
+	public ExportWatermark(IContext context, IMendixObject watermark, String watermarkColumn, Long lag) {
+		if (watermarkColumn == null || watermarkColumn.trim().isEmpty()) {
+			throw new IllegalArgumentException("A watermark column is required to export changes.");
+		}
+		if (!watermark.hasMember(WATERMARK)) {
+			throw new IllegalArgumentException("Watermark object of " + watermark.getMetaObject().getName() +
+					" should have a String attribute " + WATERMARK + " to store the watermark.");
+		}
+		if (lag != null && lag < 0) {
+			throw new IllegalArgumentException("The watermark lag should not be negative, got " + lag);
+		}
+		this.context = context;
+		this.watermark = watermark;
+		this.watermarkColumn = watermarkColumn;
+		this.lag = lag;
+		this.from = ExportCheckpoint.decodeKey((String) watermark.getValue(context, WATERMARK));
+		this.to = from;
+	}
+
+	/**
+	 * Determines the upper bound of the rows to export and restricts the statement to the rows after the stored
+	 * watermark up to that bound. The bounds are added to the parameters.
+	 * @return the restricted statement.
+	 */
+	public String restrict(IContext queryContext, String statement, Map<String, Object> parameters)
+			throws CoreException {
+		long start = System.currentTimeMillis();
+		String column = CHANGES_ALIAS + "." + watermarkColumn;
+		String source = " FROM (" + OQL.resolveStatement(statement) + ") AS " + CHANGES_ALIAS;
+		String after = from != null ? " WHERE " + column + " > $" + FROM_PARAMETER : "";
+		if (from != null) {
+			parameters.put(FROM_PARAMETER, from);
+		}
+
+		IDataTable result = Core.retrieveOQLDataTable(queryContext, OQL.createRequest("SELECT MAX(" + column +
+				") AS Watermark" + source + after, parameters, 1, 0));
+		Object highest = holdBack(result.getRowCount() > 0 ? result.getRows().get(0).getValue(queryContext, 0) : null,
+				start);
+		if (highest != null && (from == null || compare(highest, from) > 0)) {
+			to = highest;
+		}
+		parameters.put(TO_PARAMETER, to);
+		logger.debug("Exporting changes of " + watermarkColumn + " after " + from + " up to " + to);
+		return "SELECT *" + source + (from != null ? after + " AND " : " WHERE ") + column + " <= $" + TO_PARAMETER;
+	}
+
+	private Object holdBack(Object highest, long start) {
+		if (highest instanceof Date) {
+			Date bound = new Date(start - (lag != null ? lag : DEFAULT_DATE_LAG));
+			return ((Date) highest).after(bound) ? bound : highest;
+		}
+		long amount = lag != null ? lag : 0;
+		if (highest instanceof Long) {
+			return (Long) highest - amount;
+		} else if (highest instanceof Integer) {
+			return (int) Math.max(Integer.MIN_VALUE, (Integer) highest - amount);
+		} else if (highest instanceof BigDecimal) {
+			return ((BigDecimal) highest).subtract(BigDecimal.valueOf(amount));
+		} else if (highest instanceof IMendixIdentifier) {
+			return Core.createMendixIdentifier(((IMendixIdentifier) highest).toLong() - amount);
+		}
+		return highest;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compare(Object a, Object b) {
+		if (a instanceof IMendixIdentifier && b instanceof IMendixIdentifier) {
+			return Long.compare(((IMendixIdentifier) a).toLong(), ((IMendixIdentifier) b).toLong());
+		} else if (a instanceof Number && b instanceof Number) {
+			return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+		}
+		return ((Comparable) a).compareTo(b);
+	}
+
+	/**
+	 * Stores the upper bound of the export, committing the watermark object in the transaction of the export.
+	 */
+	public void advance(long rowsExported) throws CoreException {
+		setValue(WATERMARK, ExportCheckpoint.encodeKey(to));
+		setValue(LAST_EXPORTED, new Date());
+		setValue(ROWS_EXPORTED, rowsExported);
+		Core.commit(context, watermark);
+		logger.debug("Advanced watermark of " + watermarkColumn + " to " + to + " after exporting " + rowsExported +
+				" rows");
+	}
+
+	private void setValue(String member, Object value) {
+		if (watermark.hasMember(member)) {
+			watermark.setValue(context, member, value);
+		}
+	}
+}
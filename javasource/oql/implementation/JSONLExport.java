@@ -0,0 +1,130 @@
+package oql.implementation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+import com.mendix.core.CoreException;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataRow;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTableSchema;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+
+/**
+ * Writes the result of a statement as JSON Lines: one JSON object per row, using the column names as keys.
+ * Numbers and booleans are written as such, dates as ISO 8601 timestamps in UTC and all other values as strings.
+ * Ids are written as strings, as they exceed 2^53, above which readers parsing numbers as doubles (e.g. JavaScript)
+ * lose precision; Long values above 2^53 lose precision in such readers as well. Rows are written directly to the
+ * stream, without building objects in between.
+ */
+public class JSONLExport {
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX")
+			.withZone(ZoneOffset.UTC);
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Writes all pages of the pager to the output stream. The stream is flushed but not closed.
+	 * @return the amount of rows written
+	 */
+	public long export(IContext context, ResultPager pager, OutputStream os) throws CoreException, IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 64 * 1024);
+		String[] keys = null;
+		IDataTable results;
+		long rows = 0;
+		while ((results = pager.nextPage(context)) != null) {
+			IDataTableSchema tableSchema = results.getSchema();
+			if (keys == null) {
+				keys = new String[tableSchema.getColumnCount()];
+				for (int i = 0; i < keys.length; i++) {
+					StringBuilder key = new StringBuilder();
+					writeString(key, tableSchema.getColumnSchema(i).getName());
+					keys[i] = key.append(':').toString();
+				}
+			}
+
+			for (IDataRow row : results.getRows()) {
+				writer.write('{');
+				for (int i = 0; i < keys.length; i++) {
+					if (i > 0) {
+						writer.write(',');
+					}
+					writer.write(keys[i]);
+					writeValue(writer, row.getValue(context, i));
+				}
+				writer.write("}\n");
+			}
+			rows += results.getRowCount();
+		}
+		writer.flush();
+		return rows;
+	}
+
+	private static void writeValue(Writer writer, Object value) throws IOException {
+		if (value == null) {
+			writer.write("null");
+		} else if (value instanceof Boolean) {
+			writer.write((Boolean) value ? "true" : "false");
+		} else if (value instanceof BigDecimal) {
+			writer.write(((BigDecimal) value).toPlainString());
+		} else if (value instanceof Double || value instanceof Float) {
+			double number = ((Number) value).doubleValue();
+			writer.write(Double.isNaN(number) || Double.isInfinite(number) ? "null" : value.toString());
+		} else if (value instanceof Number) {
+			writer.write(value.toString());
+		} else if (value instanceof IMendixIdentifier) {
+			writer.write('"');
+			writer.write(Long.toString(((IMendixIdentifier) value).toLong()));
+			writer.write('"');
+		} else if (value instanceof Date) {
+			writer.write('"');
+			DATE_FORMAT.formatTo(Instant.ofEpochMilli(((Date) value).getTime()), writer);
+			writer.write('"');
+		} else {
+			writeString(writer, value.toString());
+		}
+	}
+
+	private static void writeString(Appendable out, String value) throws IOException {
+		out.append('"');
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+				continue;
+			}
+			out.append(value, start, i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				out.append("\\u").append(HEX[c >> 12 & 0xF]).append(HEX[c >> 8 & 0xF])
+						.append(HEX[c >> 4 & 0xF]).append(HEX[c & 0xF]);
+			}
+			start = i + 1;
+		}
+		out.append(value, start, value.length());
+		out.append('"');
+	}
+}
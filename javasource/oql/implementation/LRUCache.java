@@ -0,0 +1,24 @@
+package oql.implementation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map which evicts the least recently used entry once it holds more than the given amount of entries.
+ * Not thread safe, wrap it using Collections.synchronizedMap when shared.
+ */
+public class LRUCache<K, V> extends LinkedHashMap<K, V> {
+	private static final long serialVersionUID = 1L;
+
+	private final int maxEntries;
+
+	public LRUCache(int maxEntries) {
+		super(16, 0.75f, true);
+		this.maxEntries = maxEntries;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+		return size() > maxEntries;
+	}
+}
@@ -0,0 +1,186 @@
+package oql.implementation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.mendix.core.Core;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+
+/**
+ * Expands list parameters used in IN predicates (P.Code IN $Codes or P.Code IN ($Codes)) into one parameter per
+ * value. To keep the amount of distinct statements small, so the database can reuse their execution plans, a list
+ * is padded to the first bucket size which holds all values by repeating its last value. Lists longer than the
+ * largest bucket are split into chunks of that size, which are combined using OR (or AND for NOT IN).
+ *
+ * As databases limit the amount of parameters of a statement (e.g. 2100 for SQL Server), the lists are not padded
+ * when padding would exceed MAX_PARAMETERS parameters, and a statement with more values than that is rejected. An IN predicate over an empty list is replaced by
+ * 1 = 0, so it matches no rows, and a NOT IN predicate over an empty list by 1 = 1, so it matches all rows.
+ */
+public class ListParameters {
+	public static final int[] BUCKET_SIZES = { 16, 64, 256 };
+	public static final int MAX_PARAMETERS = 2000;
+
+	private static ILogNode logger = Core.getLogger(ListParameters.class.getSimpleName());
+
+	private static final int MAX_EXPANDED_STATEMENTS = 1024;
+	private static final Map<String, String> expandedStatements = Collections.synchronizedMap(
+			new LRUCache<String, String>(MAX_EXPANDED_STATEMENTS));
+
+	public static boolean hasLists(Map<String, Object> parameters) {
+		for (Object value : parameters.values()) {
+			if (value instanceof List) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Expands the list parameters of the statement.
+	 * @param expandedParameters receives the scalar parameters and a parameter for every expanded value.
+	 * @return the statement with the list parameters expanded.
+	 */
+	public static String expand(String statement, Map<String, Object> parameters,
+			Map<String, Object> expandedParameters) {
+		// sorted, so the same lists produce the same key regardless of the order in which they were added.
+		Map<String, List<?>> lists = new TreeMap<String, List<?>>();
+		StringBuilder key = new StringBuilder(statement);
+		for (Entry<String, Object> entry : parameters.entrySet()) {
+			if (entry.getValue() instanceof List) {
+				lists.put(entry.getKey(), (List<?>) entry.getValue());
+			} else {
+				expandedParameters.put(entry.getKey(), entry.getValue());
+			}
+		}
+		// padding is dropped when it would exceed the maximum, so every list which fits can be used.
+		int padded = expandedParameters.size();
+		for (List<?> values : lists.values()) {
+			padded += getChunks(values.size()) * getBucketSize(values.size());
+		}
+		boolean pad = padded <= MAX_PARAMETERS;
+		Map<String, Integer> sizes = new TreeMap<String, Integer>();
+		for (Entry<String, List<?>> list : lists.entrySet()) {
+			List<?> values = list.getValue();
+			int bucketSize = getBucketSize(values.size());
+			int size = pad ? getChunks(values.size()) * bucketSize : values.size();
+			sizes.put(list.getKey(), size);
+			key.append('\u0000').append(list.getKey()).append('=').append(size).append('/').append(bucketSize);
+
+			for (int i = 0; i < size; i++) {
+				Object value = values.get(Math.min(i, values.size() - 1));
+				if (value instanceof IMendixObject) {
+					value = ((IMendixObject) value).getId();
+				}
+				expandedParameters.put(getValueName(list.getKey(), i), value);
+			}
+		}
+		if (expandedParameters.size() > MAX_PARAMETERS) {
+			throw new IllegalArgumentException("The list parameters of the statement expand to " +
+					expandedParameters.size() + " parameters, the maximum is " + MAX_PARAMETERS + ". Use shorter lists " +
+					"or store the values in an entity to join with.");
+		}
+
+		String expanded = expandedStatements.get(key.toString());
+		if (expanded == null) {
+			expanded = statement;
+			for (Entry<String, List<?>> list : lists.entrySet()) {
+				expanded = expand(expanded, list.getKey(), sizes.get(list.getKey()),
+						getBucketSize(list.getValue().size()));
+			}
+			expandedStatements.put(key.toString(), expanded);
+			logger.trace("Expanded statement for lists " + key.substring(statement.length()).replace('\u0000', ' '));
+		}
+		return expanded;
+	}
+
+	/**
+	 * @return the smallest bucket size holding the amount of values, or the largest bucket size for longer lists.
+	 */
+	static int getBucketSize(int size) {
+		for (int bucketSize : BUCKET_SIZES) {
+			if (size <= bucketSize) {
+				return bucketSize;
+			}
+		}
+		return BUCKET_SIZES[BUCKET_SIZES.length - 1];
+	}
+
+	/**
+	 * @return the amount of chunks of the largest bucket size needed for the amount of values, 0 for an empty list.
+	 */
+	static int getChunks(int size) {
+		int bucketSize = getBucketSize(size);
+		return (size + bucketSize - 1) / bucketSize;
+	}
+
+	private static String getValueName(String name, int index) {
+		return name + "_OQL" + index;
+	}
+
+	/**
+	 * Replaces the IN predicates of the list by IN predicates over size values, in chunks of at most bucketSize.
+	 */
+	private static String expand(String statement, String name, int size, int bucketSize) {
+		int chunks = (size + bucketSize - 1) / bucketSize;
+		Pattern predicate = Pattern.compile("([\\w./]+)\\s+(NOT\\s+)?IN\\s*(?:\\(\\s*\\$" + Pattern.quote(name) +
+				"\\b\\s*\\)|\\$" + Pattern.quote(name) + "\\b)", Pattern.CASE_INSENSITIVE);
+		Matcher matcher = predicate.matcher(statement);
+		StringBuffer expanded = new StringBuffer();
+		while (matcher.find()) {
+			String operand = matcher.group(1);
+			boolean not = matcher.group(2) != null;
+			StringBuilder replacement = new StringBuilder();
+			if (chunks == 0) {
+				replacement.append(not ? "1 = 1" : "1 = 0");
+			} else if (chunks > 1) {
+				replacement.append('(');
+			}
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				if (chunk > 0) {
+					replacement.append(not ? " AND " : " OR ");
+				}
+				replacement.append(operand).append(not ? " NOT IN (" : " IN (");
+				for (int i = 0; i < Math.min(bucketSize, size - chunk * bucketSize); i++) {
+					if (i > 0) {
+						replacement.append(", ");
+					}
+					replacement.append('$').append(getValueName(name, chunk * bucketSize + i));
+				}
+				replacement.append(')');
+			}
+			if (chunks > 1) {
+				replacement.append(')');
+			}
+			matcher.appendReplacement(expanded, Matcher.quoteReplacement(replacement.toString()));
+		}
+		matcher.appendTail(expanded);
+		if (Pattern.compile("\\$" + Pattern.quote(name) + "\\b").matcher(expanded).find()) {
+			throw new IllegalArgumentException("List parameter $" + name + " can only be used in an IN predicate, " +
+					"e.g. P.Code IN $" + name);
+		}
+		return expanded.toString();
+	}
+
+	/**
+	 * @return the values of the attribute of the objects, or their ids when no attribute is given.
+	 */
+	public static List<Object> getValues(IContext context, List<IMendixObject> objects, String attribute) {
+		List<Object> values = new ArrayList<Object>();
+		if (objects == null) {
+			return values;
+		}
+		for (IMendixObject object : objects) {
+			values.add(attribute == null || attribute.trim().isEmpty() ? object.getId() :
+					object.getValue(context, attribute));
+		}
+		return values;
+	}
+}
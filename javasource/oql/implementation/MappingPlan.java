@@ -0,0 +1,191 @@
+package oql.implementation;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+
+import com.mendix.core.Core;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataRow;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTableSchema;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.systemwideinterfaces.core.meta.IMetaAssociation;
+import com.mendix.systemwideinterfaces.core.meta.IMetaObject;
+import com.mendix.systemwideinterfaces.core.meta.IMetaPrimitive;
+
+/**
+ * Describes how the columns of a result table are mapped onto the members of a result entity.
+ * Plans are resolved once per combination of columns and result entity and cached, so mapping a row
+ * only walks the prepared columns instead of looking up meta data for every value.
+ */
+public class MappingPlan {
+	private static final int MAX_PLANS = 256;
+
+	private static final Map<String, MappingPlan> plans = Collections.synchronizedMap(
+			new LRUCache<String, MappingPlan>(MAX_PLANS));
+
+	private final String returnEntity;
+	private final ColumnMapping[] columns;
+
+	private MappingPlan(String returnEntity, String[] columnNames) {
+		this.returnEntity = returnEntity;
+		IMetaObject targetMeta = Core.getMetaObject(returnEntity);
+		if (targetMeta == null) {
+			throw new IllegalArgumentException("Unknown result entity " + returnEntity);
+		}
+		this.columns = new ColumnMapping[columnNames.length];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = new ColumnMapping(targetMeta, columnNames[i]);
+		}
+	}
+
+	public static MappingPlan get(IDataTableSchema schema, String returnEntity) {
+		String[] columnNames = new String[schema.getColumnCount()];
+		for (int i = 0; i < columnNames.length; i++) {
+			columnNames[i] = schema.getColumnSchema(i).getName();
+		}
+		return get(returnEntity, columnNames);
+	}
+
+	/**
+	 * @return the plan mapping values of the given columns, in that order, onto the result entity.
+	 */
+	public static MappingPlan get(String returnEntity, String[] columnNames) {
+		StringBuilder key = new StringBuilder(returnEntity);
+		for (String columnName : columnNames) {
+			key.append('|').append(columnName);
+		}
+		String cacheKey = key.toString();
+		MappingPlan plan = plans.get(cacheKey);
+		if (plan == null) {
+			plan = new MappingPlan(returnEntity, columnNames);
+			plans.put(cacheKey, plan);
+		}
+		return plan;
+	}
+
+	public IMendixObject map(IContext context, IDataRow row) {
+		IMendixObject targetObj = Core.instantiate(context, returnEntity);
+		for (int i = 0; i < columns.length; i++) {
+			columns[i].apply(context, targetObj, row.getValue(context, i));
+		}
+		return targetObj;
+	}
+
+	public IMendixObject map(IContext context, Object[] values) {
+		IMendixObject targetObj = Core.instantiate(context, returnEntity);
+		apply(context, targetObj, values);
+		return targetObj;
+	}
+
+	/**
+	 * Sets the values onto an existing object of the result entity.
+	 */
+	public void apply(IContext context, IMendixObject targetObj, Object[] values) {
+		for (int i = 0; i < columns.length; i++) {
+			columns[i].apply(context, targetObj, values[i]);
+		}
+	}
+
+	static IMetaAssociation getAssociation(IMetaObject targetMeta, String columnName) {
+		/* Escaping an alias as described at https://docs.mendix.com/refguide7/oql-select-clause
+		 * leads to an error when using dots e.g. (OQL.ExamplePerson_ExamplePersonResult).
+		 * Therefore this action accepts the ExamplePerson_ExamplePersonResult part and searches for the
+		 * association that has this in it.
+		 */
+		for (IMetaAssociation association : targetMeta.getDeclaredMetaAssociationsParent()) {
+			String name = association.getName();
+			name = name.substring(name.indexOf('.') + 1);
+			if (name.equals(columnName)) {
+				return association;
+			}
+		}
+		return null;
+	}
+
+	private interface Converter {
+		Object convert(Object value);
+	}
+
+	private static final Converter IDENTITY = new Converter() {
+		@Override
+		public Object convert(Object value) {
+			return value;
+		}
+	};
+
+	private static final Converter TO_LONG = new Converter() {
+		@Override
+		public Object convert(Object value) {
+			return value instanceof Integer ? (Object) ((Integer) value).longValue() : value;
+		}
+	};
+
+	private static final Converter TO_INTEGER = new Converter() {
+		@Override
+		public Object convert(Object value) {
+			return value instanceof Long ? (Object) Math.toIntExact((Long) value) : value;
+		}
+	};
+
+	private static final Converter TO_DECIMAL = new Converter() {
+		@Override
+		public Object convert(Object value) {
+			return value instanceof Double ? BigDecimal.valueOf((Double) value) : value;
+		}
+	};
+
+	private static class ColumnMapping {
+		private final String name;
+		private final String attribute;
+		private final String association;
+		private final Converter converter;
+
+		ColumnMapping(IMetaObject targetMeta, String name) {
+			this.name = name;
+			IMetaPrimitive primitive = targetMeta.getMetaPrimitive(name);
+			IMetaAssociation metaAssociation = getAssociation(targetMeta, name);
+			this.attribute = primitive != null ? name : null;
+			this.association = metaAssociation != null ? metaAssociation.getName() : null;
+			if (primitive == null) {
+				this.converter = IDENTITY;
+			} else {
+				switch (primitive.getType()) {
+				case Long:
+					this.converter = TO_LONG;
+					break;
+				case Integer:
+					this.converter = TO_INTEGER;
+					break;
+				case Decimal:
+					this.converter = TO_DECIMAL;
+					break;
+				default:
+					this.converter = IDENTITY;
+				}
+			}
+		}
+
+		void apply(IContext context, IMendixObject targetObj, Object value) {
+			if (value == null) {
+				if (attribute != null) {
+					targetObj.setValue(context, attribute, null);
+				} else if (association == null) {
+					throw new NullPointerException("Null value found " + name +
+							" was not found as association or attribute.");
+				}
+			} else if (value instanceof IMendixIdentifier) {
+				if (association == null) {
+					throw new NullPointerException("Could not find result association " + name + " in target object.");
+				}
+				targetObj.setValue(context, association, value);
+			} else {
+				if (attribute == null) {
+					throw new NullPointerException("Could not find result attribute " + name + " in target object.");
+				}
+				targetObj.setValue(context, attribute, converter.convert(value));
+			}
+		}
+	}
+}
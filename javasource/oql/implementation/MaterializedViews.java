@@ -0,0 +1,200 @@
+package oql.implementation;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.mendix.core.Core;
+import com.mendix.core.CoreException;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.meta.IMetaObject;
+import com.mendix.systemwideinterfaces.core.meta.IMetaPrimitive.PrimitiveType;
+
+/**
+ * Statements registered as materialized views, whose rows are upserted into a persistent target entity.
+ *
+ * A refresh only retrieves the rows whose watermark column (e.g. changedDate) is at least the highest watermark
+ * stored in the target entity minus a safety lag; the target entity therefore needs an attribute with the name of
+ * the watermark column. As the watermark is stored with the rows themselves, it is committed in the same transaction
+ * and survives a restart. Rows within the safety lag are retrieved again on the next refresh, which the upsert makes
+ * harmless, so rows committed by a transaction which took up to the safety lag (in milliseconds for a DateTime
+ * watermark, otherwise in units of the watermark) to commit after setting their watermark are not missed.
+ *
+ * By default the statement is wrapped as SELECT * FROM (statement) WHERE watermarkColumn >= $OQLWatermark. A
+ * statement which uses $OQLWatermark itself is executed as is; on the first refresh the parameter is empty. Every
+ * row it returns replaces the stored row, so a grouping statement should not filter the rows it groups on the
+ * watermark, as the target would then receive aggregates of only the changed rows. Use the parameter to select the
+ * keys of the changed groups instead, e.g. WHERE O.Customer IN (SELECT C.Customer FROM ... WHERE $OQLWatermark IS
+ * NULL OR C.changedDate >= $OQLWatermark), so these groups are aggregated in full.
+ * Rows deleted from the source are not removed from the target.
+ */
+public class MaterializedViews {
+	public static final String WATERMARK_PARAMETER = "OQLWatermark";
+	public static final String VIEW_ALIAS = "OQLView";
+	// the safety lag of a DateTime watermark when none is given; other watermarks are not held back by default.
+	public static final long DEFAULT_SAFETY_LAG = 60 * 1000;
+
+	private static ILogNode logger = Core.getLogger(MaterializedViews.class.getSimpleName());
+
+	private static final Map<String, View> views = new LinkedHashMap<String, View>();
+
+	public static synchronized void register(String name, String statement, Map<String, Object> parameters,
+			String targetEntity, String keyColumn, String watermarkColumn, boolean withEvents, Long safetyLag) {
+		if (safetyLag != null && safetyLag < 0) {
+			throw new IllegalArgumentException("The safety lag should not be negative, got " + safetyLag);
+		}
+		IMetaObject meta = Core.getMetaObject(targetEntity);
+		if (meta == null || meta.getMetaPrimitive(watermarkColumn) == null) {
+			throw new IllegalArgumentException("Target entity " + targetEntity + " should have an attribute " +
+					watermarkColumn + " to store the watermark");
+		}
+		if (safetyLag == null) {
+			safetyLag = meta.getMetaPrimitive(watermarkColumn).getType() == PrimitiveType.DateTime ?
+					DEFAULT_SAFETY_LAG : 0;
+		}
+		View view = new View(name, statement, parameters, targetEntity, keyColumn, watermarkColumn, withEvents,
+				safetyLag);
+		views.put(name, view);
+		logger.info("Registered materialized view " + name + " into " + targetEntity);
+	}
+
+	public static synchronized List<View> getViews() {
+		return new ArrayList<View>(views.values());
+	}
+
+	public static synchronized View getView(String name) {
+		View view = views.get(name);
+		if (view == null) {
+			throw new IllegalArgumentException("Unknown materialized view " + name);
+		}
+		return view;
+	}
+
+	public static class View {
+		private final String name;
+		private final String statement;
+		private final Map<String, Object> parameters;
+		private final String targetEntity;
+		private final String keyColumn;
+		private final String watermarkColumn;
+		private final long safetyLag;
+		private final Materializer materializer;
+		private final ReentrantLock refreshing = new ReentrantLock();
+
+		private volatile Object watermark;
+		private volatile Date lastRefreshed;
+		private volatile long lastDuration;
+		private volatile long lastRows;
+		private volatile long refreshes;
+		private volatile long failures;
+		private volatile String lastError;
+
+		View(String name, String statement, Map<String, Object> parameters, String targetEntity, String keyColumn,
+				String watermarkColumn, boolean withEvents, long safetyLag) {
+			this.name = name;
+			this.statement = statement;
+			this.parameters = new HashMap<String, Object>(parameters);
+			this.targetEntity = targetEntity;
+			this.keyColumn = keyColumn;
+			this.watermarkColumn = watermarkColumn;
+			this.safetyLag = safetyLag;
+			this.materializer = new Materializer(targetEntity, Materializer.MODE_UPSERT, keyColumn, withEvents,
+					Materializer.DEFAULT_PAGE_SIZE);
+		}
+
+		/**
+		 * Upserts the rows changed since the highest watermark in the target entity minus the safety lag.
+		 * A refresh which is already
+		 * running (e.g. a scheduled event which takes longer than its interval) is not started again.
+		 * @return the amount of rows refreshed, or -1 if the view is already being refreshed.
+		 */
+		public long refresh(IContext context) throws CoreException {
+			if (!refreshing.tryLock()) {
+				logger.warn("Materialized view " + name + " is already being refreshed, skipping refresh");
+				return -1;
+			}
+			try {
+				long start = System.currentTimeMillis();
+				Object from = subtractLag(retrieveWatermark(context));
+				Map<String, Object> refreshParameters = new HashMap<String, Object>(parameters);
+				refreshParameters.put(WATERMARK_PARAMETER, from);
+				String refreshStatement = OQL.resolveStatement(statement);
+				if (!refreshStatement.contains("$" + WATERMARK_PARAMETER) && from != null) {
+					refreshStatement = "SELECT * FROM (" + refreshStatement + ") AS " + VIEW_ALIAS + " WHERE " +
+							VIEW_ALIAS + "." + watermarkColumn + " >= $" + WATERMARK_PARAMETER;
+				}
+				long rows = materializer.materialize(context, refreshStatement, refreshParameters);
+
+				watermark = retrieveWatermark(context);
+				lastRefreshed = new Date(start);
+				lastDuration = System.currentTimeMillis() - start;
+				lastRows = rows;
+				refreshes++;
+				lastError = null;
+				logger.debug("Refreshed materialized view " + name + " from watermark " + from + ": " + rows +
+						" rows in " + lastDuration + " ms");
+				return rows;
+			} catch (CoreException | RuntimeException e) {
+				failures++;
+				lastError = e.getMessage();
+				throw e;
+			} finally {
+				refreshing.unlock();
+			}
+		}
+
+		private Object retrieveWatermark(IContext context) throws CoreException {
+			IDataTable result = Core.retrieveOQLDataTable(context, OQL.createRequest("SELECT MAX(T." + watermarkColumn +
+					") AS Watermark FROM " + targetEntity + " T", new HashMap<String, Object>(), 1, 0));
+			return result.getRowCount() > 0 ? result.getRows().get(0).getValue(context, 0) : null;
+		}
+
+		private Object subtractLag(Object watermark) {
+			if (watermark instanceof Date) {
+				return new Date(((Date) watermark).getTime() - safetyLag);
+			} else if (watermark instanceof Long) {
+				return (Long) watermark - safetyLag;
+			} else if (watermark instanceof Integer) {
+				return (int) Math.max(Integer.MIN_VALUE, (Integer) watermark - safetyLag);
+			} else if (watermark instanceof BigDecimal) {
+				return ((BigDecimal) watermark).subtract(BigDecimal.valueOf(safetyLag));
+			}
+			return watermark;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the status of the view, where Staleness is the time since the start of the last successful
+		 * refresh: changes made after that moment are not yet in the target entity.
+		 */
+		public Map<String, Object> toSummary() {
+			Map<String, Object> summary = new LinkedHashMap<String, Object>();
+			summary.put("Name", name);
+			summary.put("TargetEntity", targetEntity);
+			summary.put("KeyColumn", keyColumn);
+			summary.put("WatermarkColumn", watermarkColumn);
+			summary.put("SafetyLag", safetyLag);
+			summary.put("Watermark", watermark instanceof Date ? String.valueOf(((Date) watermark).getTime()) :
+				watermark != null ? watermark.toString() : null);
+			summary.put("LastRefreshed", lastRefreshed);
+			summary.put("LastDuration", lastDuration);
+			summary.put("LastRows", lastRows);
+			summary.put("Staleness", lastRefreshed != null ? System.currentTimeMillis() - lastRefreshed.getTime() : null);
+			summary.put("Refreshes", refreshes);
+			summary.put("Failures", failures);
+			summary.put("Refreshing", refreshing.isLocked());
+			summary.put("LastError", lastError);
+			return summary;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package oql.implementation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.mendix.core.Core;
+import com.mendix.core.CoreException;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataRow;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.systemwideinterfaces.core.meta.IMetaObject;
+
+/**
+ * Maps the rows of a statement directly onto objects of a persistent entity and commits them page by page, using
+ * one commit per page instead of one per object.
+ *
+ * In Replace mode all existing objects of the entity are deleted first (in pages as well). In Upsert mode the rows
+ * are matched with existing objects on the attribute with the name of the key column; matching objects are updated
+ * and only rows without a match create a new object. Everything happens in the transaction of the given context,
+ * so a failure leaves the previous contents of the entity in place.
+ *
+ * When a key column is given (always for Upsert), the rows are paged by that column, which should therefore be
+ * unique. Otherwise the statement should have an ORDER BY on unique columns, as offset paging of an unordered
+ * statement may skip or repeat rows.
+ */
+public class Materializer {
+	public static final String MODE_APPEND = "Append";
+	public static final String MODE_REPLACE = "Replace";
+	public static final String MODE_UPSERT = "Upsert";
+
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+	public static final String KEYS_PARAMETER = "OQLKeys";
+	// keeps the expanded list parameter well below ListParameters.MAX_PARAMETERS for any page size.
+	private static final int MAX_KEYS_PER_QUERY = 1000;
+
+	private static ILogNode logger = Core.getLogger(Materializer.class.getSimpleName());
+
+	private final String targetEntity;
+	private final String mode;
+	private final String keyColumn;
+	private final boolean withEvents;
+	private final int pageSize;
+
+	public Materializer(String targetEntity, String mode, String keyColumn, boolean withEvents, int pageSize) {
+		IMetaObject meta = Core.getMetaObject(targetEntity);
+		if (meta == null || !meta.isPersistable()) {
+			throw new IllegalArgumentException("Target entity " + targetEntity + " should be a persistent entity");
+		}
+		this.mode = mode == null || mode.trim().isEmpty() ? MODE_APPEND : mode;
+		if (!MODE_APPEND.equals(this.mode) && !MODE_REPLACE.equals(this.mode) && !MODE_UPSERT.equals(this.mode)) {
+			throw new IllegalArgumentException("Mode should be " + MODE_APPEND + ", " + MODE_REPLACE + " or " +
+					MODE_UPSERT + ", got " + mode);
+		}
+		if (MODE_UPSERT.equals(this.mode) && (keyColumn == null || meta.getMetaPrimitive(keyColumn) == null)) {
+			throw new IllegalArgumentException("Upsert requires a key column with the name of an attribute of " +
+					targetEntity + ", got " + keyColumn);
+		}
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size should be at least 1, got " + pageSize);
+		}
+		this.targetEntity = targetEntity;
+		this.keyColumn = keyColumn;
+		this.withEvents = withEvents;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * @return the amount of rows materialized.
+	 */
+	public long materialize(IContext context, String statement, Map<String, Object> parameters) throws CoreException {
+		boolean keyset = keyColumn != null && !keyColumn.trim().isEmpty();
+		if (!keyset && !ResultPager.hasOrderBy(statement)) {
+			throw new IllegalArgumentException("Materializing requires a key column or a statement with an ORDER BY, " +
+					"so rows are not skipped or repeated between pages.");
+		}
+		if (MODE_REPLACE.equals(mode)) {
+			long deleted = deleteAll(context);
+			logger.debug("Deleted " + deleted + " objects of " + targetEntity);
+		}
+		ResultPager pager = new ResultPager(statement, parameters, pageSize, keyset ? keyColumn : null);
+		long created = 0;
+		long updated = 0;
+		IDataTable page;
+		while ((page = pager.nextPage(context)) != null) {
+			if (page.getRowCount() == 0) {
+				continue;
+			}
+			MappingPlan plan = MappingPlan.get(page.getSchema(), targetEntity);
+			int columns = page.getSchema().getColumnCount();
+			Map<Object, IMendixObject> existing = MODE_UPSERT.equals(mode) ?
+					retrieveExisting(context, page) : new HashMap<Object, IMendixObject>();
+			int keyIndex = MODE_UPSERT.equals(mode) ? ResultPager.getColumnIndex(page.getSchema(), keyColumn) : -1;
+
+			// keyed by id, so an object updated by several rows is committed once.
+			Map<Long, IMendixObject> objects = new LinkedHashMap<Long, IMendixObject>();
+			for (IDataRow row : page.getRows()) {
+				Object[] values = new Object[columns];
+				for (int i = 0; i < columns; i++) {
+					values[i] = row.getValue(context, i);
+				}
+				IMendixObject object = keyIndex >= 0 ? existing.get(BulkLookup.normalize(values[keyIndex])) : null;
+				if (object != null) {
+					plan.apply(context, object, values);
+					updated++;
+				} else {
+					object = plan.map(context, values);
+					if (keyIndex >= 0 && values[keyIndex] != null) {
+						// later rows with the same key update this object instead of creating another one.
+						existing.put(BulkLookup.normalize(values[keyIndex]), object);
+					}
+					created++;
+				}
+				objects.put(object.getId().toLong(), object);
+			}
+			commit(context, new ArrayList<IMendixObject>(objects.values()));
+			logger.debug("Materialized " + pager.getRowsRetrieved() + " rows into " + targetEntity);
+		}
+		logger.info("Materialized " + pager.getRowsRetrieved() + " rows into " + targetEntity + ": " + created +
+				" created, " + updated + " updated");
+		return pager.getRowsRetrieved();
+	}
+
+	/**
+	 * Deletes all objects of the target entity page by page. Fails when objects are not deleted (e.g. because a
+	 * before delete event returns false), as the same page would otherwise be retrieved again and again.
+	 */
+	private long deleteAll(IContext context) throws CoreException {
+		long deleted = 0;
+		List<IMendixObject> objects;
+		Set<Long> previous = new HashSet<Long>();
+		while (!(objects = Core.createXPathQuery("//" + targetEntity).setAmount(pageSize).execute(context)).isEmpty()) {
+			Set<Long> ids = new HashSet<Long>();
+			for (IMendixObject object : objects) {
+				ids.add(object.getId().toLong());
+			}
+			if (!Collections.disjoint(ids, previous)) {
+				throw new CoreException("Deleting objects of " + targetEntity + " failed, objects of the previous " +
+						"page were not deleted.");
+			}
+			boolean success = withEvents ? Core.delete(context, objects) : 
+				Core.deleteWithoutEvents(context, objects, false);
+			if (!success) {
+				throw new CoreException("Deleting objects of " + targetEntity + " failed, an event may have " +
+						"prevented the delete.");
+			}
+			ResultCache.getInstance().invalidate(objects);
+			deleted += objects.size();
+			previous = ids;
+		}
+		return deleted;
+	}
+
+	/**
+	 * Retrieves the objects of the target entity having one of the keys of the page, using a list parameter per
+	 * MAX_KEYS_PER_QUERY keys.
+	 */
+	private Map<Object, IMendixObject> retrieveExisting(IContext context, IDataTable page) throws CoreException {
+		int keyIndex = ResultPager.getColumnIndex(page.getSchema(), keyColumn);
+		List<Object> keys = new ArrayList<Object>();
+		for (IDataRow row : page.getRows()) {
+			Object key = row.getValue(context, keyIndex);
+			if (key != null) {
+				keys.add(key);
+			}
+		}
+		Map<Object, IMendixObject> existing = new HashMap<Object, IMendixObject>();
+		List<IMendixIdentifier> identifiers = new ArrayList<IMendixIdentifier>();
+		for (int start = 0; start < keys.size(); start += MAX_KEYS_PER_QUERY) {
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put(KEYS_PARAMETER, keys.subList(start, Math.min(keys.size(), start + MAX_KEYS_PER_QUERY)));
+			IDataTable ids = Core.retrieveOQLDataTable(context, OQL.createRequest("SELECT T.ID AS ID FROM " +
+					targetEntity + " T WHERE T." + keyColumn + " IN $" + KEYS_PARAMETER, parameters, 0, 0));
+			for (IDataRow row : ids.getRows()) {
+				identifiers.add((IMendixIdentifier) row.getValue(context, 0));
+			}
+		}
+		if (!identifiers.isEmpty()) {
+			for (IMendixObject object : Core.retrieveIdList(context, identifiers)) {
+				existing.put(BulkLookup.normalize(object.getValue(context, keyColumn)), object);
+			}
+		}
+		return existing;
+	}
+
+	private void commit(IContext context, List<IMendixObject> objects) throws CoreException {
+		if (withEvents) {
+			Core.commit(context, objects);
+		} else {
+			Core.commitWithoutEvents(context, objects);
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package oql.implementation;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -10,17 +11,14 @@ import java.util.Map.Entry;
 import com.mendix.core.Core;
 import com.mendix.core.CoreException;
 import com.mendix.logging.ILogNode;
-import com.mendix.systemwideinterfaces.connectionbus.data.IDataColumnSchema;
 import com.mendix.systemwideinterfaces.connectionbus.data.IDataRow;
 import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
-import com.mendix.systemwideinterfaces.connectionbus.data.IDataTableSchema;
 import com.mendix.systemwideinterfaces.connectionbus.requests.IParameterMap;
 import com.mendix.systemwideinterfaces.connectionbus.requests.IRetrievalSchema;
 import com.mendix.systemwideinterfaces.connectionbus.requests.types.IOQLTextGetRequest;
 import com.mendix.systemwideinterfaces.core.IContext;
-import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
 import com.mendix.systemwideinterfaces.core.IMendixObject;
-import com.mendix.systemwideinterfaces.core.meta.IMetaAssociation;
+import com.mendix.systemwideinterfaces.core.ISession;
 import com.mendix.systemwideinterfaces.core.meta.IMetaObject;
 import com.mendix.systemwideinterfaces.core.meta.IMetaPrimitive;
 import com.mendix.systemwideinterfaces.core.meta.IMetaPrimitive.PrimitiveType;
@@ -30,6 +28,10 @@ public class OQL {
 	
 	private static ILogNode logger = Core.getLogger(OQL.class.getSimpleName());
 	
+	private static final int MAX_PREPARED_STATEMENTS = 1024;
+	private static final Map<String, PreparedStatement> preparedStatements = Collections.synchronizedMap(
+			new LRUCache<String, PreparedStatement>(MAX_PREPARED_STATEMENTS));
+	
 	public static Map<String, Object> getNextParameters() {
 		if (nextParameters.get() == null) {
 			nextParameters.set(new HashMap<String, Object>());
@@ -45,120 +47,254 @@ public class OQL {
 		getNextParameters().put(name, value);
 	}
 	
-	public static Long countRowsOQL(IContext context, String statement, Long amount, Map<String, Object> parameters)
-		throws CoreException {
-		IOQLTextGetRequest request = Core.createOQLTextGetRequest();
-		request.setQuery(statement);
-		IParameterMap parameterMap = request.createParameterMap();
-		for (Entry<String, Object> entry : OQL.getNextParameters().entrySet()) {
-			parameterMap.put(entry.getKey(), entry.getValue());
+	/**
+	 * Instantiates the given entity and sets each value on the attribute with the same name. 
+	 * Values without a corresponding attribute are skipped, so an entity only needs to model the values of interest.
+	 */
+	public static IMendixObject createSummary(IContext context, String entity, Map<String, ? extends Object> values) {
+		IMendixObject summary = Core.instantiate(context, entity);
+		setValues(context, summary, values);
+		return summary;
+	}
+	
+	/**
+	 * Sets each value on the attribute of the object with the same name, converting numbers to the type of the 
+	 * attribute. Values without a corresponding attribute are skipped.
+	 */
+	public static void setValues(IContext context, IMendixObject object, Map<String, ? extends Object> values) {
+		IMetaObject meta = object.getMetaObject();
+		for (Entry<String, ? extends Object> entry : values.entrySet()) {
+			IMetaPrimitive primitive = meta.getMetaPrimitive(entry.getKey());
+			if (primitive == null) {
+				continue;
+			}
+			Object value = entry.getValue();
+			if (value instanceof Long && primitive.getType() == PrimitiveType.Integer) {
+				value = Math.toIntExact((Long) value);
+			} else if (value instanceof Number && primitive.getType() == PrimitiveType.Decimal) {
+				value = new BigDecimal(value.toString());
+			}
+			object.setValue(context, entry.getKey(), value);
 		}
-		request.setParameters(parameterMap);
+	}
+	
+	/**
+	 * Remembers whether a statement is the name of a DataSet (and its OQL) or OQL itself, 
+	 * so the DataSet lookup (and its exception for plain OQL) only happens once per statement.
+	 */
+	private static class PreparedStatement {
+		private final boolean dataSet;
+		private final String query;
 		
-		IRetrievalSchema schema = Core.createRetrievalSchema();
-		schema.setAmount(amount);
-		request.setRetrievalSchema(schema);
+		PreparedStatement(String statement) {
+			String dataSetQuery = null;
+			try {
+				dataSetQuery = Core.createOQLTextGetRequestFromDataSet(statement).getQuery();
+			} catch (IllegalArgumentException e) {
+				// not a DataSet, so the statement is OQL itself
+			}
+			this.dataSet = dataSetQuery != null;
+			this.query = dataSet ? dataSetQuery : statement;
+			logger.trace("Prepared " + (dataSet ? "DataSet " : "statement ") + statement);
+		}
+	}
+	
+	public static String getUserName(IContext context) {
+		ISession session = context.getSession();
+		if (session != null && session.getUserName() != null) {
+			return session.getUserName();
+		}
+		return "System";
+	}
+	
+	/**
+	 * Creates a sudo context with its own transaction (and database connection) for the session of the given
+	 * context, or a system context when it has no session. Use it for work on another thread: sudo clones share the
+	 * transaction of the original context, which is not safe to use from several threads at the same time. Changes
+	 * which have not been committed in the given context are not visible in the new context.
+	 */
+	public static IContext createIndependentContext(IContext context) {
+		ISession session = context.getSession();
+		return session != null ? session.createContext().createSudoClone() : Core.createSystemContext();
+	}
+	
+	public interface RowConsumer {
+		void accept(IMendixObject row) throws Exception;
+	}
+	
+	/**
+	 * Counts the rows of the statement in the database by wrapping it as SELECT COUNT(*) FROM (statement), 
+	 * so only the count is transferred instead of all rows.
+	 * @return the amount of rows, at most amount when an amount greater than zero is given.
+	 */
+	public static Long countRowsOQL(IContext context, String statement, Long amount, Map<String, Object> parameters)
+		throws CoreException {
+		String countStatement = "SELECT COUNT(*) AS NumberOfRows FROM (" + resolveStatement(statement) + ") AS OQLCount";
+		IOQLTextGetRequest request = createRequest(countStatement, parameters, 1, 0);
 
 		logger.debug("Executing query");
-		IDataTable results = Core.retrieveOQLDataTable(context, request);
-		return (long) results.getRowCount();
+		OQLMetrics.Measurement measurement = OQLMetrics.start(context, countStatement, parameters);
+		try {
+			IDataTable results = Core.retrieveOQLDataTable(context, request);
+			measurement.queried(results.getRowCount());
+			Number count = results.getRowCount() > 0 ? (Number) results.getRows().get(0).getValue(context, 0) : null;
+			long rows = count != null ? count.longValue() : 0;
+			measurement.completed();
+			return amount != null && amount > 0 ? Math.min(rows, amount) : rows;
+		} finally {
+			measurement.stop();
+		}
 	}
 	
-	public static List<IMendixObject> executeOQL(IContext context, String statement, String returnEntity, 
-			Long amount, Long offset, Map<String, Object> parameters) throws CoreException {
-		IOQLTextGetRequest request;
+	/**
+	 * @return whether the statement returns at least one row, retrieving at most one row.
+	 */
+	public static boolean existsOQL(IContext context, String statement, Map<String, Object> parameters) 
+		throws CoreException {
+		logger.debug("Executing query");
+		OQLMetrics.Measurement measurement = OQLMetrics.start(context, statement, parameters);
 		try {
-			request = Core.createOQLTextGetRequestFromDataSet(statement); 
-		} catch (IllegalArgumentException e) {
-			request = Core.createOQLTextGetRequest();
-			request.setQuery(statement);
-		}
-		
-		IParameterMap parameterMap = request.createParameterMap();
-		for (Entry<String, Object> entry : OQL.getNextParameters().entrySet()) {
-			parameterMap.put(entry.getKey(), entry.getValue());
+			IDataTable results = Core.retrieveOQLDataTable(context, createRequest(statement, parameters, 1, 0));
+			measurement.queried(results.getRowCount());
+			measurement.completed();
+			return results.getRowCount() > 0;
+		} finally {
+			measurement.stop();
 		}
-		request.setParameters(parameterMap);
-		
-		IRetrievalSchema schema = Core.createRetrievalSchema();
-		schema.setOffset(offset != null ? offset : 0);
-		schema.setAmount(amount != null ? amount : 0);
-		request.setRetrievalSchema(schema);
+	}
+	
+	public static List<IMendixObject> executeOQL(IContext context, String statement, String returnEntity, 
+			Long amount, Long offset, Map<String, Object> parameters) throws CoreException {
+		IOQLTextGetRequest request = createRequest(statement, parameters, 
+				amount != null ? amount : 0, offset != null ? offset : 0);
 		
 		List<IMendixObject> result = new LinkedList<IMendixObject>();
 		logger.debug("Executing query\n:" + statement);
-		IDataTable results = Core.retrieveOQLDataTable(context, request);
-		logger.debug("Mapping " + results.getRowCount() + " results.");
-		IDataTableSchema tableSchema = results.getSchema();
-		for (IDataRow row : results.getRows()) {
-			IMendixObject targetObj = Core.instantiate(context, returnEntity);
-			for (int i = 0; i < tableSchema.getColumnCount(); i++) {
-				IDataColumnSchema columnSchema = tableSchema.getColumnSchema(i);
-				logger.trace("Mapping column "+ columnSchema.getName());
-				Object value = row.getValue(context, i);
-				IMetaObject targetMeta = targetObj.getMetaObject();
-				
-				if (value == null) {
-					IMetaPrimitive primitive = targetMeta.getMetaPrimitive(columnSchema.getName());
-					if (primitive != null) {
-						targetObj.setValue(context, columnSchema.getName(), null);
-					} else {
-						if (getAssociation(targetObj, columnSchema) == null) {
-							throw new NullPointerException("Null value found " + columnSchema.getName() + 
-									" was not found as association or attribute.");
-						}
-					} 
-					
-				} else {
-					
-					if (value instanceof IMendixIdentifier) {
-						logger.trace("Treating as association");				
-						IMetaAssociation association = getAssociation(targetObj, columnSchema);
-						if (association != null) {
-							targetObj.setValue(context, association.getName(), value);
-						} else {
-							throw new NullPointerException("Could not find result association " + columnSchema.getName() + " in target object.");
-						}
-					} else {
-						logger.trace("Treating as value");
-						IMetaPrimitive primitive = targetMeta.getMetaPrimitive(columnSchema.getName());
-						
-						if (primitive == null) {
-							throw new NullPointerException("Could not find result attribute " + columnSchema.getName() + " in target object.");
-						}
-						
-						if (value instanceof Integer && primitive.getType() == PrimitiveType.Long) {
-							value = (Long) ((Integer) value).longValue();
-						} else if (value instanceof Long && primitive.getType() == PrimitiveType.Integer) {
-							value = Integer.parseInt(((Long) value).toString()); // not so happy way of conversion
-						} else if (value instanceof Double && primitive.getType() == PrimitiveType.Decimal) {
-							value = new BigDecimal((Double) value);
-						}
-						targetObj.setValue(context, columnSchema.getName(), value);
-					}
-				}
-				
+		OQLMetrics.Measurement measurement = OQLMetrics.start(context, statement, parameters);
+		try {
+			IDataTable results = Core.retrieveOQLDataTable(context, request);
+			measurement.queried(results.getRowCount());
+			logger.debug("Mapping " + results.getRowCount() + " results.");
+			MappingPlan plan = MappingPlan.get(results.getSchema(), returnEntity);
+			for (IDataRow row : results.getRows()) {
+				result.add(plan.map(context, row));
 			}
-			result.add(targetObj);
+			measurement.completed();
+		} finally {
+			measurement.stop();
 		}
 		
 		return result;
 	}
-
-	private static IMetaAssociation getAssociation(IMendixObject targetObj, IDataColumnSchema columnSchema) {
-		/* Escaping an alias as described at https://docs.mendix.com/refguide7/oql-select-clause
-		 * leads to an error when using dots e.g. (OQL.ExamplePerson_ExamplePersonResult).
-		 * Therefore this action accepts the ExamplePerson_ExamplePersonResult part and searches for the
-		 * association that has this in it.
-		 */
-		for (IMetaAssociation association : targetObj.getMetaObject().getDeclaredMetaAssociationsParent()) {
-			String name = association.getName();
-			name = name.substring(name.indexOf('.') + 1);
-			if (name.equals(columnSchema.getName())) {
-				return association;
+	
+	/**
+	 * Executes the statement like executeOQL, but serves the rows from the result cache when the same statement
+	 * was executed with the same parameters, amount and offset within the time to live.
+	 */
+	public static List<IMendixObject> executeCachedOQL(IContext context, String statement, String returnEntity, 
+			Long amount, Long offset, Map<String, Object> parameters, long timeToLive) throws CoreException {
+		ResultCache cache = ResultCache.getInstance();
+		String key = ResultCache.createKey(statement, parameters, amount, offset);
+		List<IMendixObject> result = new LinkedList<IMendixObject>();
+		OQLMetrics.Measurement measurement = OQLMetrics.start(context, statement, parameters);
+		try {
+			ResultCache.CachedResult cached = cache.get(key);
+			if (cached == null) {
+				long generation = cache.getGeneration();
+				logger.debug("Executing query\n:" + statement);
+				IDataTable results = Core.retrieveOQLDataTable(context, createRequest(statement, parameters, 
+						amount != null ? amount : 0, offset != null ? offset : 0));
+				cached = new ResultCache.CachedResult(context, results);
+				cache.put(key, statement, cached, timeToLive, generation);
+			} else {
+				logger.debug("Using cached result for query\n:" + statement);
 			}
+			measurement.queried(cached.getRows().size());
+			
+			MappingPlan plan = MappingPlan.get(cached.getSchema(), returnEntity);
+			for (Object[] values : cached.getRows()) {
+				result.add(plan.map(context, values));
+			}
+			measurement.completed();
+		} finally {
+			measurement.stop();
+		}
+		return result;
+	}
+	
+	/**
+	 * Executes the statement page by page and hands each mapped row to the consumer. 
+	 * Only one page of rows (and their objects) is held in memory at any time. The pages are retrieved by offset,
+	 * so the statement requires an ORDER BY on unique columns to neither skip nor repeat rows.
+	 * @return the amount of rows handed to the consumer
+	 */
+	public static long streamOQL(IContext context, String statement, String returnEntity, 
+			int pageSize, Map<String, Object> parameters, RowConsumer rowConsumer) throws Exception {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Page size should be greater than zero, got " + pageSize);
 		}
-		return null;
+		if (!ResultPager.hasOrderBy(statement)) {
+			logger.warn("Streaming a statement without ORDER BY, rows may be skipped or repeated between pages:\n" +
+					statement);
+		}
+		long offset = 0;
+		while (true) {
+			logger.debug("Streaming query offset " + offset + "\n:" + statement);
+			IDataTable results;
+			OQLMetrics.Measurement measurement = OQLMetrics.start(context, statement, parameters);
+			try {
+				results = Core.retrieveOQLDataTable(context, createRequest(statement, parameters, pageSize, offset));
+				measurement.queried(results.getRowCount());
+				measurement.completed();
+			} finally {
+				measurement.stop();
+			}
+			MappingPlan plan = MappingPlan.get(results.getSchema(), returnEntity);
+			for (IDataRow row : results.getRows()) {
+				rowConsumer.accept(plan.map(context, row));
+			}
+			offset += results.getRowCount();
+			if (results.getRowCount() != pageSize) {
+				break;
+			}
+		}
+		return offset;
+	}
+	
+	/**
+	 * @return the OQL text of the given statement, which is either the name of a DataSet or OQL itself.
+	 */
+	public static String resolveStatement(String statement) {
+		PreparedStatement prepared = preparedStatements.get(statement);
+		if (prepared == null) {
+			prepared = new PreparedStatement(statement);
+			preparedStatements.put(statement, prepared);
+		}
+		return prepared.query;
+	}
+	
+	public static IOQLTextGetRequest createRequest(String statement, Map<String, Object> parameters, 
+			long amount, long offset) {
+		IOQLTextGetRequest request = Core.createOQLTextGetRequest();
+		String query = resolveStatement(statement);
+		if (ListParameters.hasLists(parameters)) {
+			Map<String, Object> expandedParameters = new HashMap<String, Object>();
+			query = ListParameters.expand(query, parameters, expandedParameters);
+			parameters = expandedParameters;
+		}
+		request.setQuery(query);
+		
+		IParameterMap parameterMap = request.createParameterMap();
+		for (Entry<String, Object> entry : parameters.entrySet()) {
+			parameterMap.put(entry.getKey(), entry.getValue());
+		}
+		request.setParameters(parameterMap);
+		
+		IRetrievalSchema schema = Core.createRetrievalSchema();
+		schema.setOffset(offset);
+		schema.setAmount(amount);
+		request.setRetrievalSchema(schema);
+		return request;
 	}
 	
 }
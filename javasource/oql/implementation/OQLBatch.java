@@ -0,0 +1,137 @@
+package oql.implementation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.mendix.core.Core;
+import com.mendix.core.CoreException;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+
+/**
+ * Collects statements (each with its own parameters) for a context and executes them concurrently
+ * on the OQLExecutor, so the total duration is close to the duration of the slowest statement.
+ *
+ * Batches are kept per context instead of per thread, as the runtime reuses threads for requests of other
+ * sessions: the results of a batch are only available to the microflow which executed it and are released
+ * together with its context.
+ */
+public class OQLBatch {
+	private static final Map<IContext, OQLBatch> batches = Collections.synchronizedMap(
+			new WeakHashMap<IContext, OQLBatch>());
+
+	private static ILogNode logger = Core.getLogger(OQLBatch.class.getSimpleName());
+
+	private final List<Statement> statements = new ArrayList<Statement>();
+	private final List<List<IMendixObject>> results = new ArrayList<List<IMendixObject>>();
+	private boolean executed = false;
+
+	public static OQLBatch get(IContext context) {
+		synchronized (batches) {
+			OQLBatch batch = batches.get(context);
+			if (batch == null) {
+				batch = new OQLBatch();
+				batches.put(context, batch);
+			}
+			return batch;
+		}
+	}
+
+	/**
+	 * Adds a statement to the batch, using a copy of the given parameters.
+	 * Adding a statement to a batch which has been executed starts a new batch.
+	 * @return the index of the statement, used to obtain its result after execution.
+	 */
+	public int add(String statement, String returnEntity, Long amount, Long offset, Map<String, Object> parameters) {
+		if (executed) {
+			statements.clear();
+			results.clear();
+			executed = false;
+		}
+		statements.add(new Statement(statement, returnEntity, amount, offset, parameters));
+		return statements.size() - 1;
+	}
+
+	/**
+	 * Executes all statements of the batch concurrently, each in its own sudo context and transaction, as the
+	 * transaction of the given context cannot be used by several threads at the same time.
+	 * When the batch fails, its statements are discarded, so the next statement added starts a new batch.
+	 */
+	public void execute(IContext context) throws CoreException {
+		logger.debug("Executing batch of " + statements.size() + " statements");
+		results.clear();
+		executed = true;
+		List<Future<List<IMendixObject>>> futures = new ArrayList<Future<List<IMendixObject>>>();
+		boolean completed = false;
+		try {
+			for (final Statement statement : statements) {
+				final IContext statementContext = OQL.createIndependentContext(context);
+				futures.add(OQLExecutor.submit(new Callable<List<IMendixObject>>() {
+					@Override
+					public List<IMendixObject> call() throws Exception {
+						return OQL.executeOQL(statementContext, statement.statement, statement.returnEntity,
+								statement.amount, statement.offset, statement.parameters);
+					}
+				}));
+			}
+			for (Future<List<IMendixObject>> future : futures) {
+				results.add(future.get());
+			}
+			completed = true;
+		} catch (RejectedExecutionException e) {
+			throw new CoreException("Executing batch failed: " + e.getMessage(), e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			throw new CoreException("Executing batch failed: " + e.getCause().getMessage(), e.getCause());
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new CoreException("Executing batch was interrupted", e);
+		} finally {
+			if (!completed) {
+				cancel(futures);
+				statements.clear();
+				results.clear();
+			}
+		}
+	}
+
+	public List<IMendixObject> getResult(int index) {
+		if (!executed || index < 0 || index >= results.size()) {
+			throw new IllegalArgumentException("No result available for statement " + index +
+					", the batch contains " + results.size() + " results.");
+		}
+		return results.get(index);
+	}
+
+	private static void cancel(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	private static class Statement {
+		private final String statement;
+		private final String returnEntity;
+		private final Long amount;
+		private final Long offset;
+		private final Map<String, Object> parameters;
+
+		Statement(String statement, String returnEntity, Long amount, Long offset, Map<String, Object> parameters) {
+			this.statement = statement;
+			this.returnEntity = returnEntity;
+			this.amount = amount;
+			this.offset = offset;
+			this.parameters = new HashMap<String, Object>(parameters);
+		}
+	}
+}
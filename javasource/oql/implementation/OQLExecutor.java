@@ -0,0 +1,66 @@
+package oql.implementation;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of threads executing statements concurrently, shared by all actions of this module.
+ * Every thread holds at most one database connection at a time, so the pool size bounds the amount
+ * of connections taken from the runtime by concurrent statements. At most MAX_QUEUED_STATEMENTS statements wait
+ * for a thread, further statements are rejected.
+ */
+public class OQLExecutor {
+	public static final int DEFAULT_POOL_SIZE = 8;
+	public static final int MAX_QUEUED_STATEMENTS = 1000;
+
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_POOL_SIZE, DEFAULT_POOL_SIZE,
+			60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED_STATEMENTS), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "OQL-Executor-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @throws RejectedExecutionException when MAX_QUEUED_STATEMENTS statements are already waiting.
+	 */
+	public static <T> Future<T> submit(Callable<T> task) {
+		try {
+			return executor.submit(task);
+		} catch (RejectedExecutionException e) {
+			throw new RejectedExecutionException("Too many statements are waiting to be executed (" +
+					executor.getQueue().size() + "), try again later.", e);
+		}
+	}
+
+	public static synchronized void setPoolSize(int poolSize) {
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("Pool size should be at least 1, got " + poolSize);
+		}
+		if (poolSize > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(poolSize);
+			executor.setCorePoolSize(poolSize);
+		} else {
+			executor.setCorePoolSize(poolSize);
+			executor.setMaximumPoolSize(poolSize);
+		}
+	}
+
+	public static int getPoolSize() {
+		return executor.getMaximumPoolSize();
+	}
+}
@@ -0,0 +1,195 @@
+package oql.implementation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.mendix.core.Core;
+import com.mendix.core.CoreException;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+
+/**
+ * Executes statements in the background on the OQLExecutor. Every job is identified by a handle which is used to
+ * poll its status, fetch its result or cancel it. The result rows are kept unmapped until they are fetched, so the
+ * objects are created in the context of the fetching microflow.
+ */
+public class OQLJobs {
+	public static final String STATUS_RUNNING = "Running";
+	public static final String STATUS_COMPLETED = "Completed";
+	public static final String STATUS_FAILED = "Failed";
+	public static final String STATUS_CANCELLED = "Cancelled";
+
+	// finished jobs which have not been accessed for this long are removed.
+	private static final long EXPIRY = 30 * 60 * 1000;
+
+	private static ILogNode logger = Core.getLogger(OQLJobs.class.getSimpleName());
+
+	private static final Map<String, Job> jobs = new ConcurrentHashMap<String, Job>();
+	private static volatile int maxJobsPerUser = 4;
+
+	public static void setMaxJobsPerUser(int maxJobs) {
+		if (maxJobs < 1) {
+			throw new IllegalArgumentException("The maximum amount of jobs per user should be at least 1, got " + maxJobs);
+		}
+		maxJobsPerUser = maxJobs;
+	}
+
+	/**
+	 * @return the handle of the job executing the statement.
+	 */
+	public static String submit(IContext context, final String statement, String returnEntity,
+			final Long amount, final Long offset, Map<String, Object> parameters) throws CoreException {
+		purgeExpired();
+		String user = OQL.getUserName(context);
+		synchronized (jobs) {
+			int active = 0;
+			for (Job job : jobs.values()) {
+				if (job.user.equals(user) && job.isActive()) {
+					active++;
+				}
+			}
+			if (active >= maxJobsPerUser) {
+				throw new CoreException("User " + user + " already has " + active + " running OQL jobs, the maximum is " +
+						maxJobsPerUser + ".");
+			}
+
+			// the job outlives the request, so it cannot use the transaction of the request.
+			final IContext jobContext = OQL.createIndependentContext(context);
+			final Map<String, Object> jobParameters = new HashMap<String, Object>(parameters);
+			final Job job = new Job(user, returnEntity);
+			job.future = OQLExecutor.submit(new Callable<ResultCache.CachedResult>() {
+				@Override
+				public ResultCache.CachedResult call() throws Exception {
+					job.started = true;
+					OQLMetrics.Measurement measurement = OQLMetrics.start(jobContext, statement, jobParameters);
+					try {
+						IDataTable results = Core.retrieveOQLDataTable(jobContext, OQL.createRequest(statement, jobParameters,
+								amount != null ? amount : 0, offset != null ? offset : 0));
+						measurement.queried(results.getRowCount());
+						ResultCache.CachedResult result = new ResultCache.CachedResult(jobContext, results);
+						measurement.completed();
+						return result;
+					} finally {
+						job.finished = true;
+						measurement.stop();
+					}
+				}
+			});
+			String handle = UUID.randomUUID().toString();
+			jobs.put(handle, job);
+			logger.debug("Submitted job " + handle + " for " + user);
+			return handle;
+		}
+	}
+
+	public static String getStatus(IContext context, String handle) {
+		Future<ResultCache.CachedResult> future = getJob(context, handle).future;
+		if (future.isCancelled()) {
+			return STATUS_CANCELLED;
+		} else if (!future.isDone()) {
+			return STATUS_RUNNING;
+		}
+		try {
+			future.get();
+			return STATUS_COMPLETED;
+		} catch (ExecutionException | InterruptedException e) {
+			return STATUS_FAILED;
+		}
+	}
+
+	/**
+	 * Maps the result of a completed job to the result entity and removes the job.
+	 */
+	public static List<IMendixObject> fetch(IContext context, String handle) throws CoreException {
+		Job job = getJob(context, handle);
+		if (!job.future.isDone()) {
+			throw new CoreException("Job " + handle + " is still running.");
+		}
+		jobs.remove(handle);
+		ResultCache.CachedResult result;
+		try {
+			result = job.future.get();
+		} catch (CancellationException e) {
+			throw new CoreException("Job " + handle + " was cancelled.");
+		} catch (ExecutionException e) {
+			throw new CoreException("Job " + handle + " failed: " + e.getCause().getMessage(), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CoreException("Fetching job " + handle + " was interrupted", e);
+		}
+		List<IMendixObject> objects = new ArrayList<IMendixObject>(result.getRows().size());
+		MappingPlan plan = MappingPlan.get(result.getSchema(), job.returnEntity);
+		for (Object[] values : result.getRows()) {
+			objects.add(plan.map(context, values));
+		}
+		return objects;
+	}
+
+	/**
+	 * Cancels the job, interrupting the thread executing its statement. The runtime offers no way to abort a statement
+	 * which is already executing, so the database keeps executing it until it completes: the job keeps counting
+	 * against the maximum amount of jobs of the user until then. A job which has not started yet is not executed.
+	 * @return false if the job had already finished.
+	 */
+	public static boolean cancel(IContext context, String handle) {
+		Job job = getJob(context, handle);
+		logger.debug("Cancelling job " + handle);
+		return job.future.cancel(true);
+	}
+
+	private static Job getJob(IContext context, String handle) {
+		Job job = handle != null ? jobs.get(handle) : null;
+		if (job == null || !job.user.equals(OQL.getUserName(context))) {
+			throw new IllegalArgumentException("Unknown job " + handle);
+		}
+		job.lastAccess = System.currentTimeMillis();
+		return job;
+	}
+
+	private static void purgeExpired() {
+		long now = System.currentTimeMillis();
+		Iterator<Job> iterator = jobs.values().iterator();
+		while (iterator.hasNext()) {
+			Job job = iterator.next();
+			if (!job.isActive() && job.lastAccess + EXPIRY < now) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static class Job {
+		private final String user;
+		private final String returnEntity;
+		private volatile Future<ResultCache.CachedResult> future;
+		private volatile boolean started = false;
+		private volatile boolean finished = false;
+		private volatile long lastAccess = System.currentTimeMillis();
+
+		Job(String user, String returnEntity) {
+			this.user = user;
+			this.returnEntity = returnEntity;
+		}
+
+		/**
+		 * @return whether the statement of the job is (still) executing or waiting to be executed. A cancelled job
+		 * stays active until its statement has actually finished, as cancelling does not abort the statement.
+		 */
+		private boolean isActive() {
+			if (started) {
+				return !finished;
+			}
+			return !future.isDone();
+		}
+	}
+}
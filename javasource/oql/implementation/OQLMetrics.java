@@ -0,0 +1,238 @@
+package oql.implementation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+import com.mendix.systemwideinterfaces.core.IContext;
+
+/**
+ * Collects call counts, latencies and row counts per statement. Statements are grouped by their fingerprint,
+ * which is the statement with all literals and parameters replaced by a question mark.
+ */
+public class OQLMetrics {
+	/** Upper bounds (in milliseconds) of the latency histogram buckets, the last bucket holds everything above. */
+	public static final long[] BUCKETS = { 1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000 };
+
+	private static final int MAX_STATEMENTS = 1000;
+	private static final String OTHER_STATEMENTS = "(other statements)";
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern PARAMETER = Pattern.compile("\\$\\w+");
+	private static final Pattern NUMBER = Pattern.compile("\\b\\d+(\\.\\d+)?\\b");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private static final Map<String, String> fingerprints = Collections.synchronizedMap(
+			new LRUCache<String, String>(MAX_STATEMENTS));
+	private static final Map<String, StatementMetrics> metrics = new ConcurrentHashMap<String, StatementMetrics>();
+
+	public static Measurement start(IContext context, String statement, Map<String, Object> parameters) {
+		return new Measurement(context, statement, parameters);
+	}
+
+	public static String fingerprint(String statement) {
+		String fingerprint = fingerprints.get(statement);
+		if (fingerprint == null) {
+			fingerprint = STRING_LITERAL.matcher(statement).replaceAll("?");
+			fingerprint = PARAMETER.matcher(fingerprint).replaceAll("?");
+			fingerprint = NUMBER.matcher(fingerprint).replaceAll("?");
+			fingerprint = WHITESPACE.matcher(fingerprint).replaceAll(" ").trim();
+			fingerprints.put(statement, fingerprint);
+		}
+		return fingerprint;
+	}
+
+	public static List<StatementMetrics> getMetrics() {
+		return new ArrayList<StatementMetrics>(metrics.values());
+	}
+
+	public static void reset() {
+		metrics.clear();
+	}
+
+	private static StatementMetrics getMetrics(String fingerprint) {
+		StatementMetrics statementMetrics = metrics.get(fingerprint);
+		if (statementMetrics == null) {
+			if (metrics.size() >= MAX_STATEMENTS) {
+				fingerprint = OTHER_STATEMENTS;
+			}
+			metrics.putIfAbsent(fingerprint, new StatementMetrics(fingerprint));
+			statementMetrics = metrics.get(fingerprint);
+		}
+		return statementMetrics;
+	}
+
+	/**
+	 * Measures a single execution of a statement. Call queried after retrieving the rows, completed after
+	 * processing them and stop in a finally block; an execution which was not completed is counted as an error.
+	 * Executions exceeding the threshold of the SlowQueryLog are recorded there as well.
+	 */
+	public static class Measurement {
+		private final IContext context;
+		private final String statement;
+		private final Map<String, Object> parameters;
+		private final long start = System.nanoTime();
+		private long queried = -1;
+		private long rows = 0;
+		private boolean completed = false;
+
+		private Measurement(IContext context, String statement, Map<String, Object> parameters) {
+			this.context = context;
+			this.statement = statement;
+			this.parameters = parameters;
+		}
+
+		public void queried(long rows) {
+			this.queried = System.nanoTime();
+			this.rows = rows;
+		}
+
+		public void completed() {
+			this.completed = true;
+		}
+
+		/**
+		 * @return the duration of the execution in milliseconds.
+		 */
+		public long stop() {
+			long end = System.nanoTime();
+			long queryEnd = queried >= 0 ? queried : end;
+			getMetrics(fingerprint(statement)).record(queryEnd - start, end - queryEnd, rows, !completed);
+			long duration = (end - start) / 1000000;
+			if (SlowQueryLog.isSlow(duration)) {
+				SlowQueryLog.record(context, statement, parameters, rows, (queryEnd - start) / 1000000,
+						(end - queryEnd) / 1000000);
+			}
+			return duration;
+		}
+	}
+
+	public static class StatementMetrics {
+		private final String fingerprint;
+		private final AtomicLong calls = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong rows = new AtomicLong();
+		private final AtomicLong queryTime = new AtomicLong();
+		private final AtomicLong mappingTime = new AtomicLong();
+		private final AtomicLong maxQueryTime = new AtomicLong();
+		private final AtomicLongArray queryHistogram = new AtomicLongArray(BUCKETS.length + 1);
+		private final AtomicLongArray mappingHistogram = new AtomicLongArray(BUCKETS.length + 1);
+
+		StatementMetrics(String fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+
+		void record(long queryNanos, long mappingNanos, long rowCount, boolean error) {
+			long queryMillis = queryNanos / 1000000;
+			long mappingMillis = mappingNanos / 1000000;
+			calls.incrementAndGet();
+			if (error) {
+				errors.incrementAndGet();
+			}
+			rows.addAndGet(rowCount);
+			queryTime.addAndGet(queryMillis);
+			mappingTime.addAndGet(mappingMillis);
+			maxQueryTime.accumulateAndGet(queryMillis, Math::max);
+			queryHistogram.incrementAndGet(bucket(queryMillis));
+			mappingHistogram.incrementAndGet(bucket(mappingMillis));
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		public long getCalls() {
+			return calls.get();
+		}
+
+		public long getErrors() {
+			return errors.get();
+		}
+
+		public long getRows() {
+			return rows.get();
+		}
+
+		public long getQueryTime() {
+			return queryTime.get();
+		}
+
+		public long getMappingTime() {
+			return mappingTime.get();
+		}
+
+		public long getMaxQueryTime() {
+			return maxQueryTime.get();
+		}
+
+		public long[] getQueryHistogram() {
+			return toArray(queryHistogram);
+		}
+
+		public long[] getMappingHistogram() {
+			return toArray(mappingHistogram);
+		}
+
+		/**
+		 * @return the upper bound (in milliseconds) of the bucket holding the given percentile of the query times.
+		 */
+		public long getQueryTimePercentile(double percentile) {
+			long[] histogram = getQueryHistogram();
+			long total = 0;
+			for (long count : histogram) {
+				total += count;
+			}
+			long threshold = (long) Math.ceil(total * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS.length; i++) {
+				seen += histogram[i];
+				if (seen >= threshold) {
+					return BUCKETS[i];
+				}
+			}
+			return getMaxQueryTime();
+		}
+
+		/**
+		 * @return the metrics as attribute name and value pairs, see OQL.createSummary.
+		 */
+		public Map<String, Object> toSummary() {
+			Map<String, Object> summary = new LinkedHashMap<String, Object>();
+			summary.put("Statement", fingerprint);
+			summary.put("Calls", getCalls());
+			summary.put("Errors", getErrors());
+			summary.put("Rows", getRows());
+			summary.put("QueryTime", getQueryTime());
+			summary.put("MappingTime", getMappingTime());
+			summary.put("MaxQueryTime", getMaxQueryTime());
+			summary.put("AverageQueryTime", getCalls() > 0 ? getQueryTime() / getCalls() : 0L);
+			summary.put("P50QueryTime", getQueryTimePercentile(50));
+			summary.put("P95QueryTime", getQueryTimePercentile(95));
+			summary.put("P99QueryTime", getQueryTimePercentile(99));
+			return summary;
+		}
+
+		private static int bucket(long millis) {
+			for (int i = 0; i < BUCKETS.length; i++) {
+				if (millis <= BUCKETS[i]) {
+					return i;
+				}
+			}
+			return BUCKETS.length;
+		}
+
+		private static long[] toArray(AtomicLongArray array) {
+			long[] values = new long[array.length()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = array.get(i);
+			}
+			return values;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package oql.implementation;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.mendix.externalinterface.connector.RequestHandler;
+import com.mendix.m2ee.api.IMxRuntimeRequest;
+import com.mendix.m2ee.api.IMxRuntimeResponse;
+
+/**
+ * Serves the statement metrics as plain text in the Prometheus exposition format.
+ */
+public class OQLMetricsHandler extends RequestHandler {
+
+	@Override
+	protected void processRequest(IMxRuntimeRequest request, IMxRuntimeResponse response, String path) throws Exception {
+		response.setContentType("text/plain; version=0.0.4");
+		response.setCharacterEncoding("UTF-8");
+		Writer writer = response.getWriter();
+		writer.write("# TYPE oql_statement_calls_total counter\n");
+		writer.write("# TYPE oql_statement_errors_total counter\n");
+		writer.write("# TYPE oql_statement_rows_total counter\n");
+		writer.write("# TYPE oql_statement_query_milliseconds histogram\n");
+		writer.write("# TYPE oql_statement_mapping_milliseconds histogram\n");
+		for (OQLMetrics.StatementMetrics metrics : OQLMetrics.getMetrics()) {
+			String label = "statement=\"" + escape(metrics.getFingerprint()) + "\"";
+			writer.write("oql_statement_calls_total{" + label + "} " + metrics.getCalls() + "\n");
+			writer.write("oql_statement_errors_total{" + label + "} " + metrics.getErrors() + "\n");
+			writer.write("oql_statement_rows_total{" + label + "} " + metrics.getRows() + "\n");
+			writeHistogram(writer, "oql_statement_query_milliseconds", label, metrics.getQueryHistogram(),
+					metrics.getQueryTime());
+			writeHistogram(writer, "oql_statement_mapping_milliseconds", label, metrics.getMappingHistogram(),
+					metrics.getMappingTime());
+		}
+		writer.flush();
+	}
+
+	private static void writeHistogram(Writer writer, String name, String label, long[] histogram, long sum)
+			throws IOException {
+		long cumulative = 0;
+		for (int i = 0; i < histogram.length; i++) {
+			cumulative += histogram[i];
+			String bound = i < OQLMetrics.BUCKETS.length ? Long.toString(OQLMetrics.BUCKETS[i]) : "+Inf";
+			writer.write(name + "_bucket{" + label + ",le=\"" + bound + "\"} " + cumulative + "\n");
+		}
+		writer.write(name + "_sum{" + label + "} " + sum + "\n");
+		writer.write(name + "_count{" + label + "} " + cumulative + "\n");
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,56 @@
+package oql.implementation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mendix.core.CoreException;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataColumnSchema;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataRow;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+
+/**
+ * Writes the result of a statement as a Parquet file, see ParquetWriter. Rows are added to the current row group
+ * as the pages are retrieved, so at most one row group and one page are kept in memory.
+ */
+public class ParquetExport {
+	private final boolean compress;
+	private final int rowGroupSize;
+
+	public ParquetExport(boolean compress, int rowGroupSize) {
+		this.compress = compress;
+		this.rowGroupSize = rowGroupSize;
+	}
+
+	/**
+	 * Writes all pages of the pager to the output stream. The stream is flushed but not closed.
+	 * @return the amount of rows written
+	 */
+	public long export(IContext context, ResultPager pager, OutputStream os) throws CoreException, IOException {
+		ParquetWriter writer = null;
+		IDataTable results;
+		while ((results = pager.nextPage(context)) != null) {
+			if (writer == null) {
+				List<String> columnNames = new ArrayList<String>();
+				for (IDataColumnSchema columnSchema : results.getSchema().getColumnSchemas()) {
+					columnNames.add(columnSchema.getName());
+				}
+				writer = new ParquetWriter(os, columnNames, compress, rowGroupSize);
+			}
+			int columnCount = results.getSchema().getColumnCount();
+			for (IDataRow row : results.getRows()) {
+				Object[] values = new Object[columnCount];
+				for (int i = 0; i < columnCount; i++) {
+					Object value = row.getValue(context, i);
+					values[i] = value instanceof IMendixIdentifier ? ((IMendixIdentifier) value).toLong() : value;
+				}
+				writer.write(values);
+			}
+		}
+		writer.finish();
+		return writer.getRowsWritten();
+	}
+}
@@ -0,0 +1,651 @@
+package oql.implementation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes rows as a Parquet file (format version 1) with one optional column per result column.
+ *
+ * Rows are buffered until a row group is full, after which every column is written as a column chunk. A chunk
+ * with few distinct values is dictionary encoded, storing each value once and referring to it using run length
+ * and bit packed encoded indexes; other chunks are stored plain. The column types are derived from the values in
+ * the first row group: Booleans become BOOLEAN, Integers INT32, Longs INT64, Dates INT64 with TIMESTAMP_MILLIS,
+ * BigDecimals DECIMAL(28, 8), Doubles DOUBLE and everything else UTF8 strings; a column holding both Integers and
+ * Longs becomes INT64. A column without any values in the first row group is written as a string column.
+ * A value of a later row group which does not fit the type of its column (e.g. a Long beyond the range of an INT32
+ * column) fails the export instead of being truncated.
+ */
+public class ParquetWriter {
+	public static final int DEFAULT_ROW_GROUP_SIZE = 100000;
+
+	private static final int PAGE_SIZE = 20000;
+	private static final int MAX_DICTIONARY_SIZE = 65536;
+	private static final int DECIMAL_PRECISION = 28;
+	private static final int DECIMAL_SCALE = 8;
+	private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+	// physical types
+	private static final int TYPE_BOOLEAN = 0;
+	private static final int TYPE_INT32 = 1;
+	private static final int TYPE_INT64 = 2;
+	private static final int TYPE_DOUBLE = 5;
+	private static final int TYPE_BYTE_ARRAY = 6;
+
+	// converted types
+	private static final int CONVERTED_UTF8 = 0;
+	private static final int CONVERTED_DECIMAL = 5;
+	private static final int CONVERTED_TIMESTAMP_MILLIS = 9;
+
+	private static final int REPETITION_OPTIONAL = 1;
+
+	private static final int ENCODING_PLAIN = 0;
+	private static final int ENCODING_PLAIN_DICTIONARY = 2;
+	private static final int ENCODING_RLE = 3;
+
+	private static final int CODEC_UNCOMPRESSED = 0;
+	private static final int CODEC_GZIP = 2;
+
+	private static final int PAGE_DATA = 0;
+	private static final int PAGE_DICTIONARY = 2;
+
+	private final CountingOutputStream out;
+	private final List<Column> columns = new ArrayList<Column>();
+	private final List<RowGroup> rowGroups = new ArrayList<RowGroup>();
+	private final int codec;
+	private final int rowGroupSize;
+	private boolean typesResolved = false;
+	private int bufferedRows = 0;
+	private long totalRows = 0;
+
+	public ParquetWriter(OutputStream os, List<String> columnNames, boolean compress, int rowGroupSize)
+			throws IOException {
+		if (rowGroupSize <= 0) {
+			throw new IllegalArgumentException("Row group size should be greater than zero, got " + rowGroupSize);
+		}
+		this.out = new CountingOutputStream(os);
+		this.codec = compress ? CODEC_GZIP : CODEC_UNCOMPRESSED;
+		this.rowGroupSize = rowGroupSize;
+		for (String name : columnNames) {
+			columns.add(new Column(name));
+		}
+		out.write(MAGIC);
+	}
+
+	/**
+	 * Adds a row, containing one value (or null) per column. Dates are stored as timestamps, values in a string
+	 * column are stored using their string representation.
+	 */
+	public void write(Object[] row) throws IOException {
+		if (row.length != columns.size()) {
+			throw new IllegalArgumentException("Expected " + columns.size() + " values, got " + row.length);
+		}
+		for (int i = 0; i < row.length; i++) {
+			columns.get(i).values.add(row[i]);
+		}
+		bufferedRows++;
+		if (bufferedRows >= rowGroupSize) {
+			writeRowGroup();
+		}
+	}
+
+	/**
+	 * Writes the remaining rows and the file metadata. The stream is flushed but not closed.
+	 */
+	public void finish() throws IOException {
+		writeRowGroup();
+		resolveTypes();
+		byte[] metadata = fileMetaData();
+		out.write(metadata);
+		writeInt(out, metadata.length);
+		out.write(MAGIC);
+		out.flush();
+	}
+
+	public long getRowsWritten() {
+		return totalRows + bufferedRows;
+	}
+
+	private void resolveTypes() {
+		if (typesResolved) {
+			return;
+		}
+		for (Column column : columns) {
+			Object sample = null;
+			for (Object value : column.values) {
+				if (sample == null) {
+					sample = value;
+				} else if (value instanceof Long && (sample instanceof Integer || sample instanceof Short ||
+						sample instanceof Byte)) {
+					sample = value;
+					break;
+				}
+			}
+			if (sample instanceof Boolean) {
+				column.type = TYPE_BOOLEAN;
+			} else if (sample instanceof Integer || sample instanceof Short || sample instanceof Byte) {
+				column.type = TYPE_INT32;
+			} else if (sample instanceof Long) {
+				column.type = TYPE_INT64;
+			} else if (sample instanceof Date) {
+				column.type = TYPE_INT64;
+				column.convertedType = CONVERTED_TIMESTAMP_MILLIS;
+			} else if (sample instanceof BigDecimal) {
+				column.type = TYPE_BYTE_ARRAY;
+				column.convertedType = CONVERTED_DECIMAL;
+			} else if (sample instanceof Double || sample instanceof Float) {
+				column.type = TYPE_DOUBLE;
+			} else {
+				column.type = TYPE_BYTE_ARRAY;
+				column.convertedType = CONVERTED_UTF8;
+			}
+		}
+		typesResolved = true;
+	}
+
+	private void writeRowGroup() throws IOException {
+		if (bufferedRows == 0) {
+			return;
+		}
+		resolveTypes();
+		RowGroup rowGroup = new RowGroup(out.getCount(), bufferedRows);
+		for (Column column : columns) {
+			rowGroup.chunks.add(writeColumnChunk(column));
+		}
+		rowGroups.add(rowGroup);
+		totalRows += bufferedRows;
+		bufferedRows = 0;
+	}
+
+	private ColumnChunk writeColumnChunk(Column column) throws IOException {
+		List<Object> values = new ArrayList<Object>(column.values.size());
+		for (Object value : column.values) {
+			values.add(convert(column, value));
+		}
+		column.values.clear();
+
+		ColumnChunk chunk = new ColumnChunk(column, out.getCount(), values.size());
+		Map<Object, Integer> dictionary = column.type != TYPE_BOOLEAN ? createDictionary(values) : null;
+		if (dictionary != null) {
+			ByteArrayOutputStream page = new ByteArrayOutputStream();
+			for (Object value : dictionary.keySet()) {
+				writePlain(page, column.type, value);
+			}
+			chunk.dictionaryPageOffset = out.getCount();
+			writePage(chunk, PAGE_DICTIONARY, dictionary.size(), ENCODING_PLAIN_DICTIONARY, page.toByteArray());
+		}
+		chunk.dataPageOffset = out.getCount();
+		for (int start = 0; start < values.size(); start += PAGE_SIZE) {
+			List<Object> pageValues = values.subList(start, Math.min(values.size(), start + PAGE_SIZE));
+			writePage(chunk, PAGE_DATA, pageValues.size(),
+					dictionary != null ? ENCODING_PLAIN_DICTIONARY : ENCODING_PLAIN,
+					dataPage(column.type, pageValues, dictionary));
+		}
+		return chunk;
+	}
+
+	/**
+	 * @return the distinct values and their index, or null if dictionary encoding is not worth it.
+	 */
+	private static Map<Object, Integer> createDictionary(List<Object> values) {
+		Map<Object, Integer> dictionary = new LinkedHashMap<Object, Integer>();
+		int count = 0;
+		for (Object value : values) {
+			if (value != null) {
+				count++;
+				if (!dictionary.containsKey(value)) {
+					if (dictionary.size() == MAX_DICTIONARY_SIZE) {
+						return null;
+					}
+					dictionary.put(value, dictionary.size());
+				}
+			}
+		}
+		return dictionary.size() * 2 <= count ? dictionary : null;
+	}
+
+	private static Object convert(Column column, Object value) {
+		if (value == null) {
+			return null;
+		}
+		switch (column.type) {
+		case TYPE_BOOLEAN:
+			if (!(value instanceof Boolean)) {
+				throw mismatch(column, value, "BOOLEAN");
+			}
+			return value;
+		case TYPE_INT32:
+			if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+				return ((Number) value).intValue();
+			} else if (value instanceof Long && (Long) value == ((Long) value).intValue()) {
+				return ((Long) value).intValue();
+			}
+			throw mismatch(column, value, "INT32");
+		case TYPE_INT64:
+			if (value instanceof Date) {
+				return ((Date) value).getTime();
+			} else if (value instanceof Long || value instanceof Integer || value instanceof Short ||
+					value instanceof Byte) {
+				return ((Number) value).longValue();
+			}
+			throw mismatch(column, value, "INT64");
+		case TYPE_DOUBLE:
+			if (!(value instanceof Number)) {
+				throw mismatch(column, value, "DOUBLE");
+			}
+			return ((Number) value).doubleValue();
+		default:
+			if (column.convertedType == CONVERTED_DECIMAL) {
+				BigDecimal decimal;
+				try {
+					decimal = value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+				} catch (NumberFormatException e) {
+					throw mismatch(column, value, "DECIMAL");
+				}
+				decimal = decimal.setScale(DECIMAL_SCALE, RoundingMode.HALF_UP);
+				if (decimal.precision() > DECIMAL_PRECISION) {
+					throw mismatch(column, value, "DECIMAL(" + DECIMAL_PRECISION + ", " + DECIMAL_SCALE + ")");
+				}
+				return decimal;
+			}
+			return value.toString();
+		}
+	}
+
+	private static IllegalArgumentException mismatch(Column column, Object value, String type) {
+		return new IllegalArgumentException("Value " + value + " of column " + column.name + " does not fit its type " +
+				type + ", which was derived from the values in the first row group.");
+	}
+
+	private static byte[] dataPage(int type, List<Object> values, Map<Object, Integer> dictionary) throws IOException {
+		ByteArrayOutputStream page = new ByteArrayOutputStream();
+		int[] levels = new int[values.size()];
+		int present = 0;
+		for (int i = 0; i < levels.length; i++) {
+			if (values.get(i) != null) {
+				levels[i] = 1;
+				present++;
+			}
+		}
+		byte[] definitionLevels = encodeHybrid(levels, levels.length, 1);
+		writeInt(page, definitionLevels.length);
+		page.write(definitionLevels);
+
+		if (dictionary != null) {
+			int[] indexes = new int[present];
+			int index = 0;
+			for (Object value : values) {
+				if (value != null) {
+					indexes[index++] = dictionary.get(value);
+				}
+			}
+			int bitWidth = Math.max(1, 32 - Integer.numberOfLeadingZeros(dictionary.size() - 1));
+			page.write(bitWidth);
+			page.write(encodeHybrid(indexes, present, bitWidth));
+		} else if (type == TYPE_BOOLEAN) {
+			byte[] bits = new byte[(present + 7) / 8];
+			int index = 0;
+			for (Object value : values) {
+				if (value != null) {
+					if ((Boolean) value) {
+						bits[index / 8] |= 1 << (index % 8);
+					}
+					index++;
+				}
+			}
+			page.write(bits);
+		} else {
+			for (Object value : values) {
+				if (value != null) {
+					writePlain(page, type, value);
+				}
+			}
+		}
+		return page.toByteArray();
+	}
+
+	private void writePage(ColumnChunk chunk, int pageType, int valueCount, int encoding, byte[] page)
+			throws IOException {
+		byte[] body = page;
+		if (codec == CODEC_GZIP) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(page.length / 4 + 64);
+			try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+				gzip.write(page);
+			}
+			body = compressed.toByteArray();
+		}
+
+		ThriftWriter header = new ThriftWriter();
+		header.i32(1, pageType);
+		header.i32(2, page.length);
+		header.i32(3, body.length);
+		header.beginStruct(pageType == PAGE_DATA ? 5 : 7);
+		header.i32(1, valueCount);
+		header.i32(2, encoding);
+		if (pageType == PAGE_DATA) {
+			header.i32(3, ENCODING_RLE);
+			header.i32(4, ENCODING_RLE);
+		}
+		header.end();
+		header.end();
+		byte[] headerBytes = header.toByteArray();
+
+		out.write(headerBytes);
+		out.write(body);
+		chunk.uncompressedSize += headerBytes.length + page.length;
+		chunk.compressedSize += headerBytes.length + body.length;
+	}
+
+	private byte[] fileMetaData() {
+		ThriftWriter metadata = new ThriftWriter();
+		metadata.i32(1, 1);
+		metadata.list(2, ThriftWriter.STRUCT, columns.size() + 1);
+		metadata.begin();
+		metadata.string(4, "schema");
+		metadata.i32(5, columns.size());
+		metadata.end();
+		for (Column column : columns) {
+			metadata.begin();
+			metadata.i32(1, column.type);
+			metadata.i32(3, REPETITION_OPTIONAL);
+			metadata.string(4, column.name);
+			if (column.convertedType != null) {
+				metadata.i32(6, column.convertedType);
+			}
+			if (column.convertedType != null && column.convertedType == CONVERTED_DECIMAL) {
+				metadata.i32(7, DECIMAL_SCALE);
+				metadata.i32(8, DECIMAL_PRECISION);
+			}
+			metadata.end();
+		}
+		metadata.i64(3, totalRows);
+		metadata.list(4, ThriftWriter.STRUCT, rowGroups.size());
+		for (RowGroup rowGroup : rowGroups) {
+			long uncompressedSize = 0;
+			long compressedSize = 0;
+			metadata.begin();
+			metadata.list(1, ThriftWriter.STRUCT, rowGroup.chunks.size());
+			for (ColumnChunk chunk : rowGroup.chunks) {
+				metadata.begin();
+				metadata.i64(2, chunk.offset);
+				metadata.beginStruct(3);
+				metadata.i32(1, chunk.column.type);
+				metadata.list(2, ThriftWriter.I32, 2);
+				metadata.listI32(chunk.dictionaryPageOffset >= 0 ? ENCODING_PLAIN_DICTIONARY : ENCODING_PLAIN);
+				metadata.listI32(ENCODING_RLE);
+				metadata.list(3, ThriftWriter.BINARY, 1);
+				metadata.listString(chunk.column.name);
+				metadata.i32(4, codec);
+				metadata.i64(5, chunk.valueCount);
+				metadata.i64(6, chunk.uncompressedSize);
+				metadata.i64(7, chunk.compressedSize);
+				metadata.i64(9, chunk.dataPageOffset);
+				if (chunk.dictionaryPageOffset >= 0) {
+					metadata.i64(11, chunk.dictionaryPageOffset);
+				}
+				metadata.end();
+				metadata.end();
+				uncompressedSize += chunk.uncompressedSize;
+				compressedSize += chunk.compressedSize;
+			}
+			metadata.i64(2, uncompressedSize);
+			metadata.i64(3, rowGroup.rowCount);
+			metadata.i64(5, rowGroup.offset);
+			metadata.i64(6, compressedSize);
+			metadata.end();
+		}
+		metadata.string(6, "OQL module");
+		metadata.end();
+		return metadata.toByteArray();
+	}
+
+	/**
+	 * Encodes the values using the run length / bit packing hybrid encoding. Runs of at least 8 equal values are
+	 * run length encoded, all other values are bit packed in groups of 8. The last group is padded with zeros.
+	 */
+	static byte[] encodeHybrid(int[] values, int count, int bitWidth) {
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		int literalStart = 0;
+		int i = 0;
+		while (i < count) {
+			int run = 1;
+			while (i + run < count && values[i + run] == values[i]) {
+				run++;
+			}
+			if (run >= 8 && (i - literalStart) % 8 == 0) {
+				writeBitPacked(encoded, values, literalStart, i, bitWidth);
+				writeVarInt(encoded, (long) run << 1);
+				for (int b = 0; b < (bitWidth + 7) / 8; b++) {
+					encoded.write(values[i] >>> (8 * b));
+				}
+				i += run;
+				literalStart = i;
+			} else {
+				i++;
+			}
+		}
+		writeBitPacked(encoded, values, literalStart, count, bitWidth);
+		return encoded.toByteArray();
+	}
+
+	private static void writeBitPacked(ByteArrayOutputStream encoded, int[] values, int from, int to, int bitWidth) {
+		if (from == to) {
+			return;
+		}
+		int groups = (to - from + 7) / 8;
+		writeVarInt(encoded, ((long) groups << 1) | 1);
+		byte[] packed = new byte[groups * bitWidth];
+		for (int index = 0; index < to - from; index++) {
+			int value = values[from + index];
+			for (int b = 0; b < bitWidth; b++) {
+				if ((value >>> b & 1) != 0) {
+					int bit = index * bitWidth + b;
+					packed[bit / 8] |= 1 << (bit % 8);
+				}
+			}
+		}
+		encoded.write(packed, 0, packed.length);
+	}
+
+	private static void writePlain(ByteArrayOutputStream os, int type, Object value) throws IOException {
+		switch (type) {
+		case TYPE_INT32:
+			writeInt(os, (Integer) value);
+			break;
+		case TYPE_INT64:
+			writeLong(os, (Long) value);
+			break;
+		case TYPE_DOUBLE:
+			writeLong(os, Double.doubleToLongBits((Double) value));
+			break;
+		default:
+			byte[] bytes = value instanceof BigDecimal ? ((BigDecimal) value).unscaledValue().toByteArray() :
+					((String) value).getBytes(StandardCharsets.UTF_8);
+			writeInt(os, bytes.length);
+			os.write(bytes);
+		}
+	}
+
+	private static void writeInt(OutputStream os, int value) throws IOException {
+		os.write(value);
+		os.write(value >>> 8);
+		os.write(value >>> 16);
+		os.write(value >>> 24);
+	}
+
+	private static void writeLong(OutputStream os, long value) throws IOException {
+		writeInt(os, (int) value);
+		writeInt(os, (int) (value >>> 32));
+	}
+
+	private static void writeVarInt(ByteArrayOutputStream os, long value) {
+		while ((value & ~0x7FL) != 0) {
+			os.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		os.write((int) value);
+	}
+
+	private static class Column {
+		private final String name;
+		private final List<Object> values = new ArrayList<Object>();
+		private int type;
+		private Integer convertedType = null;
+
+		Column(String name) {
+			this.name = name;
+		}
+	}
+
+	private static class ColumnChunk {
+		private final Column column;
+		private final long offset;
+		private final long valueCount;
+		private long dictionaryPageOffset = -1;
+		private long dataPageOffset;
+		private long uncompressedSize = 0;
+		private long compressedSize = 0;
+
+		ColumnChunk(Column column, long offset, long valueCount) {
+			this.column = column;
+			this.offset = offset;
+			this.valueCount = valueCount;
+		}
+	}
+
+	private static class RowGroup {
+		private final long offset;
+		private final long rowCount;
+		private final List<ColumnChunk> chunks = new ArrayList<ColumnChunk>();
+
+		RowGroup(long offset, long rowCount) {
+			this.offset = offset;
+			this.rowCount = rowCount;
+		}
+	}
+
+	/**
+	 * Minimal writer for the Thrift compact protocol, used for the page headers and file metadata.
+	 */
+	private static class ThriftWriter {
+		static final int I32 = 5;
+		static final int I64 = 6;
+		static final int BINARY = 8;
+		static final int LIST = 9;
+		static final int STRUCT = 12;
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final int[] lastFieldIds = new int[8];
+		private int depth = 0;
+
+		void i32(int id, int value) {
+			field(id, I32);
+			writeVarInt(bytes, zigZag(value));
+		}
+
+		void i64(int id, long value) {
+			field(id, I64);
+			writeVarInt(bytes, zigZag(value));
+		}
+
+		void string(int id, String value) {
+			field(id, BINARY);
+			listString(value);
+		}
+
+		void list(int id, int elementType, int size) {
+			field(id, LIST);
+			if (size < 15) {
+				bytes.write(size << 4 | elementType);
+			} else {
+				bytes.write(0xF0 | elementType);
+				writeVarInt(bytes, size);
+			}
+		}
+
+		void listI32(int value) {
+			writeVarInt(bytes, zigZag(value));
+		}
+
+		void listString(String value) {
+			byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(bytes, encoded.length);
+			bytes.write(encoded, 0, encoded.length);
+		}
+
+		void beginStruct(int id) {
+			field(id, STRUCT);
+			begin();
+		}
+
+		/**
+		 * Starts a struct which is an element of a list.
+		 */
+		void begin() {
+			lastFieldIds[++depth] = 0;
+		}
+
+		/**
+		 * Ends the current struct, or the message itself at the outermost level.
+		 */
+		void end() {
+			bytes.write(0);
+			if (depth > 0) {
+				depth--;
+			}
+		}
+
+		byte[] toByteArray() {
+			return bytes.toByteArray();
+		}
+
+		private void field(int id, int type) {
+			int delta = id - lastFieldIds[depth];
+			if (delta > 0 && delta <= 15) {
+				bytes.write(delta << 4 | type);
+			} else {
+				bytes.write(type);
+				writeVarInt(bytes, zigZag(id));
+			}
+			lastFieldIds[depth] = id;
+		}
+
+		private static long zigZag(long value) {
+			return (value << 1) ^ (value >> 63);
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+
+		CountingOutputStream(OutputStream os) {
+			super(os);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+}
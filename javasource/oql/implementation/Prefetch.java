@@ -0,0 +1,189 @@
+package oql.implementation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.mendix.core.Core;
+import com.mendix.core.CoreException;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.systemwideinterfaces.core.meta.IMetaAssociation;
+
+/**
+ * Retrieves the objects referred to by the associations of a list of (result) objects using one retrieve per entity,
+ * instead of one retrieve per object when every object is followed over its association separately.
+ *
+ * The retrieved objects are kept per context, so they are available for the rest of the microflow (or request)
+ * using that context and are released together with the context. Every prefetch replaces the objects kept for the
+ * context, so streaming pages only keeps the objects of the last page, and at most MAX_CACHED_OBJECTS are kept.
+ * Every commit increments the generation of the entities committed. Prefetched objects of an entity committed since
+ * they were retrieved are retrieved again instead of being returned stale, without visiting the kept objects on commit.
+ */
+public class Prefetch {
+	public static final int MAX_CACHED_OBJECTS = 10000;
+	private static final int MAX_IDS_PER_RETRIEVE = 1000;
+
+	private static ILogNode logger = Core.getLogger(Prefetch.class.getSimpleName());
+
+	private static final Map<IContext, Map<Long, Prefetched>> caches = Collections.synchronizedMap(
+			new WeakHashMap<IContext, Map<Long, Prefetched>>());
+	private static final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+	private static volatile boolean listening = false;
+
+	/**
+	 * Retrieves the objects referred to by the references of the given objects, replacing the objects prefetched
+	 * in this context before.
+	 * @return the amount of objects retrieved.
+	 */
+	public static int prefetch(IContext context, List<IMendixObject> objects) throws CoreException {
+		Map<Long, Prefetched> cache = getCache(context);
+		cache.clear();
+		Map<String, Map<Long, IMendixIdentifier>> idsByEntity = new LinkedHashMap<String, Map<Long, IMendixIdentifier>>();
+		Map<String, List<String>> referencesByEntity = new HashMap<String, List<String>>();
+		for (IMendixObject object : objects) {
+			String entity = object.getMetaObject().getName();
+			List<String> references = referencesByEntity.get(entity);
+			if (references == null) {
+				references = new ArrayList<String>();
+				for (IMetaAssociation association : object.getMetaObject().getMetaAssociationsParent()) {
+					references.add(association.getName());
+				}
+				referencesByEntity.put(entity, references);
+			}
+			for (String reference : references) {
+				Object value = object.getValue(context, reference);
+				if (!(value instanceof IMendixIdentifier)) {
+					// empty references and reference sets are skipped.
+					continue;
+				}
+				IMendixIdentifier id = (IMendixIdentifier) value;
+				Map<Long, IMendixIdentifier> ids = idsByEntity.get(id.getObjectType());
+				if (ids == null) {
+					ids = new LinkedHashMap<Long, IMendixIdentifier>();
+					idsByEntity.put(id.getObjectType(), ids);
+				}
+				ids.put(id.toLong(), id);
+			}
+		}
+
+		int retrieved = 0;
+		for (Map.Entry<String, Map<Long, IMendixIdentifier>> entity : idsByEntity.entrySet()) {
+			List<IMendixIdentifier> ids = new ArrayList<IMendixIdentifier>(entity.getValue().values());
+			for (int start = 0; start < ids.size(); start += MAX_IDS_PER_RETRIEVE) {
+				long generation = getGeneration(entity.getKey());
+				List<IMendixObject> fetched = Core.retrieveIdList(context,
+						ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_RETRIEVE)));
+				for (IMendixObject object : fetched) {
+					if (cache.size() < MAX_CACHED_OBJECTS) {
+						cache.put(object.getId().toLong(), new Prefetched(object, generation));
+					}
+				}
+				retrieved += fetched.size();
+			}
+			logger.debug("Prefetched " + ids.size() + " objects of " + entity.getKey());
+		}
+		return retrieved;
+	}
+
+	/**
+	 * @return the object referred to by the association of the object, from the prefetched objects when available.
+	 * The association can be given with or without its module.
+	 */
+	public static IMendixObject get(IContext context, IMendixObject object, String association) throws CoreException {
+		String name = association;
+		if (!object.hasMember(name)) {
+			IMetaAssociation metaAssociation = MappingPlan.getAssociation(object.getMetaObject(),
+					association.substring(association.indexOf('.') + 1));
+			if (metaAssociation == null) {
+				throw new IllegalArgumentException("Association " + association + " is not an association of " +
+						object.getMetaObject().getName());
+			}
+			name = metaAssociation.getName();
+		}
+		Object value = object.getValue(context, name);
+		if (!(value instanceof IMendixIdentifier)) {
+			return null;
+		}
+		IMendixIdentifier id = (IMendixIdentifier) value;
+		Map<Long, Prefetched> cache = getCache(context);
+		Prefetched prefetched = cache.get(id.toLong());
+		if (prefetched != null && prefetched.generation == getGeneration(id.getObjectType())) {
+			return prefetched.object;
+		}
+		logger.debug("Object " + id.toLong() + " has not been prefetched or was committed since, retrieving it");
+		long generation = getGeneration(id.getObjectType());
+		IMendixObject referred = Core.retrieveId(context, id);
+		if (referred != null && (prefetched != null || cache.size() < MAX_CACHED_OBJECTS)) {
+			cache.put(id.toLong(), new Prefetched(referred, generation));
+		}
+		return referred;
+	}
+
+	private static long getGeneration(String entity) {
+		AtomicLong generation = generations.get(entity);
+		return generation != null ? generation.get() : 0;
+	}
+
+	private static Map<Long, Prefetched> getCache(IContext context) {
+		ensureListening();
+		synchronized (caches) {
+			Map<Long, Prefetched> cache = caches.get(context);
+			if (cache == null) {
+				cache = new ConcurrentHashMap<Long, Prefetched>();
+				caches.put(context, cache);
+			}
+			return cache;
+		}
+	}
+
+	private static synchronized void ensureListening() {
+		if (listening) {
+			return;
+		}
+		Core.getListenersRegistry().registerAfterCommitListener(new Consumer<List<IMendixObject>>() {
+			@Override
+			public void accept(List<IMendixObject> committed) {
+				Set<String> entities = new HashSet<String>();
+				for (IMendixObject object : committed) {
+					entities.add(object.getMetaObject().getName());
+				}
+				for (String entity : entities) {
+					AtomicLong generation = generations.get(entity);
+					if (generation == null) {
+						AtomicLong created = new AtomicLong();
+						generation = generations.putIfAbsent(entity, created);
+						if (generation == null) {
+							generation = created;
+						}
+					}
+					generation.incrementAndGet();
+				}
+			}
+		});
+		listening = true;
+		logger.debug("Listening to commits for prefetched object invalidation");
+	}
+
+	private static class Prefetched {
+		private final IMendixObject object;
+		// the generation of the entity when the object was retrieved.
+		private final long generation;
+
+		private Prefetched(IMendixObject object, long generation) {
+			this.object = object;
+			this.generation = generation;
+		}
+	}
+}
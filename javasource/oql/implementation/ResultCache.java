@@ -0,0 +1,325 @@
+package oql.implementation;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.mendix.core.Core;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataRow;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTableSchema;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.systemwideinterfaces.core.meta.IMetaObject;
+
+/**
+ * Caches the (unmapped) rows of statement results, keyed by the statement, its parameter values, amount and offset.
+ * Entries expire after their time to live and are removed as soon as an object of an entity the statement reads from
+ * is committed or deleted. The cache is bounded by the amount of entries and by the estimated size of the cached rows.
+ *
+ * Deletes are observed through an after delete listener when the runtime offers one (registerAfterDeleteListener).
+ * Otherwise only the deletes of this module (e.g. materializing with Replace) invalidate entries, and other deletes
+ * remain cached until the time to live expires or InvalidateOQLResultCache is called.
+ *
+ * Every invalidation increments the generation of the cache. A result is only stored when none of the entities it
+ * reads from has been invalidated since the generation read before executing its statement, so a commit which
+ * happens while the statement is executing does not leave a stale result in the cache.
+ */
+public class ResultCache {
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern QUALIFIED_NAME = Pattern.compile("\\b([A-Za-z]\\w*\\.[A-Za-z]\\w*)\\b");
+
+	private static ILogNode logger = Core.getLogger(ResultCache.class.getSimpleName());
+
+	private static final ResultCache instance = new ResultCache();
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	private long maxSize = DEFAULT_MAX_SIZE;
+	private long size = 0;
+	private boolean listening = false;
+	private long generation = 0;
+	private long allInvalidated = 0;
+	// the generation in which entries reading from an entity were last invalidated.
+	private final Map<String, Long> invalidated = new HashMap<String, Long>();
+
+	public static ResultCache getInstance() {
+		return instance;
+	}
+
+	public synchronized void configure(int maxEntries, long maxSize) {
+		this.maxEntries = maxEntries;
+		this.maxSize = maxSize;
+		evict();
+	}
+
+	/**
+	 * @return the cached rows of the statement, or null if these are not (or no longer) cached.
+	 */
+	public synchronized CachedResult get(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+			remove(key);
+			evictions.incrementAndGet();
+			entry = null;
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.result;
+	}
+
+	/**
+	 * @return the current generation, to be read before executing a statement whose result is put in the cache.
+	 */
+	public synchronized long getGeneration() {
+		ensureListening();
+		return generation;
+	}
+
+	/**
+	 * Stores the result, unless an entity the statement reads from was invalidated after the given generation.
+	 */
+	public void put(String key, String statement, CachedResult result, long timeToLive, long generation) {
+		Set<String> entities = getEntities(OQL.resolveStatement(statement));
+		Entry entry = new Entry(result, entities, System.currentTimeMillis() + timeToLive);
+		synchronized (this) {
+			if (isInvalidatedSince(entities, generation)) {
+				logger.debug("Not caching result, as its entities were invalidated while executing the statement");
+				return;
+			}
+			remove(key);
+			entries.put(key, entry);
+			size += result.estimatedSize;
+			evict();
+		}
+	}
+
+	/**
+	 * Removes all entries reading from the given entity, or all entries if no entity is given.
+	 */
+	public void invalidate(String entity) {
+		invalidate(entity != null ? Collections.singleton(entity) : null);
+	}
+
+	/**
+	 * Removes all entries reading from the entity of the given objects or one of its generalizations, as a statement
+	 * reading from a generalization also reads the specialization.
+	 */
+	public void invalidate(List<IMendixObject> objects) {
+		Set<String> types = new HashSet<String>();
+		for (IMendixObject object : objects) {
+			for (IMetaObject meta = object.getMetaObject(); meta != null; meta = meta.getSuperObject()) {
+				types.add(meta.getName());
+			}
+		}
+		if (!types.isEmpty()) {
+			invalidate(types);
+		}
+	}
+
+	private synchronized void invalidate(Set<String> types) {
+		generation++;
+		if (types == null) {
+			allInvalidated = generation;
+		} else {
+			for (String type : types) {
+				invalidated.put(type, generation);
+			}
+		}
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			if (types == null || !Collections.disjoint(entry.entities, types)) {
+				iterator.remove();
+				size -= entry.result.estimatedSize;
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	public synchronized Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		statistics.put("Hits", hits.get());
+		statistics.put("Misses", misses.get());
+		statistics.put("Evictions", evictions.get());
+		statistics.put("Invalidations", invalidations.get());
+		statistics.put("Entries", (long) entries.size());
+		statistics.put("EstimatedSize", size);
+		return statistics;
+	}
+
+	public static String createKey(String statement, Map<String, Object> parameters, Long amount, Long offset) {
+		StringBuilder key = new StringBuilder(statement);
+		key.append('\u0000').append(amount).append('\u0000').append(offset);
+		for (Map.Entry<String, Object> parameter : new TreeMap<String, Object>(parameters).entrySet()) {
+			key.append('\u0000').append(parameter.getKey()).append('=');
+			if (parameter.getValue() instanceof List) {
+				key.append("List:");
+				for (Object value : (List<?>) parameter.getValue()) {
+					appendValue(key, value);
+					key.append(',');
+				}
+			} else {
+				appendValue(key, parameter.getValue());
+			}
+		}
+		return key.toString();
+	}
+
+	private static void appendValue(StringBuilder key, Object value) {
+		if (value instanceof IMendixIdentifier) {
+			key.append("ID:").append(((IMendixIdentifier) value).toLong());
+		} else if (value instanceof Date) {
+			key.append("Date:").append(((Date) value).getTime());
+		} else if (value != null) {
+			key.append(value.getClass().getSimpleName()).append(':').append(value);
+		}
+	}
+
+	static Set<String> getEntities(String statement) {
+		// every qualified name outside string literals is considered, which includes entities used in paths.
+		Matcher matcher = QUALIFIED_NAME.matcher(STRING_LITERAL.matcher(statement).replaceAll("''"));
+		Set<String> entities = new HashSet<String>();
+		while (matcher.find()) {
+			entities.add(matcher.group(1));
+		}
+		return entities;
+	}
+
+	private boolean isInvalidatedSince(Set<String> entities, long since) {
+		if (allInvalidated > since) {
+			return true;
+		}
+		for (String entity : entities) {
+			Long last = invalidated.get(entity);
+			if (last != null && last > since) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void remove(String key) {
+		Entry removed = entries.remove(key);
+		if (removed != null) {
+			size -= removed.result.estimatedSize;
+		}
+	}
+
+	private void evict() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while ((entries.size() > maxEntries || size > maxSize) && iterator.hasNext()) {
+			Entry entry = iterator.next();
+			iterator.remove();
+			size -= entry.result.estimatedSize;
+			evictions.incrementAndGet();
+		}
+	}
+
+	private void ensureListening() {
+		if (listening) {
+			return;
+		}
+		Consumer<List<IMendixObject>> listener = new Consumer<List<IMendixObject>>() {
+			@Override
+			public void accept(List<IMendixObject> objects) {
+				invalidate(objects);
+			}
+		};
+		Core.getListenersRegistry().registerAfterCommitListener(listener);
+		listening = true;
+		// not every runtime version offers an after delete listener, so it is looked up instead of called directly.
+		try {
+			Object registry = Core.getListenersRegistry();
+			registry.getClass().getMethod("registerAfterDeleteListener", Consumer.class).invoke(registry, listener);
+			logger.debug("Listening to commits and deletes for result cache invalidation");
+		} catch (NoSuchMethodException e) {
+			logger.info("The runtime does not signal deletes; deleted objects remain in cached results until their " +
+					"time to live expires or InvalidateOQLResultCache is called.");
+		} catch (ReflectiveOperationException e) {
+			logger.warn("Registering the after delete listener for result cache invalidation failed", e);
+		}
+	}
+
+	/**
+	 * The rows of a result, detached from the database connection.
+	 */
+	public static class CachedResult {
+		private final IDataTableSchema schema;
+		private final List<Object[]> rows;
+		private final long estimatedSize;
+
+		public CachedResult(IContext context, IDataTable table) {
+			this.schema = table.getSchema();
+			this.rows = new ArrayList<Object[]>(table.getRowCount());
+			int columns = schema.getColumnCount();
+			long estimate = 64;
+			for (IDataRow row : table.getRows()) {
+				Object[] values = new Object[columns];
+				estimate += 16 + 8 * columns;
+				for (int i = 0; i < columns; i++) {
+					values[i] = row.getValue(context, i);
+					estimate += estimateSize(values[i]);
+				}
+				rows.add(values);
+			}
+			this.estimatedSize = estimate;
+		}
+
+		public IDataTableSchema getSchema() {
+			return schema;
+		}
+
+		public List<Object[]> getRows() {
+			return Collections.unmodifiableList(rows);
+		}
+
+		private static long estimateSize(Object value) {
+			if (value == null) {
+				return 0;
+			} else if (value instanceof String) {
+				return 40 + 2 * ((String) value).length();
+			} else if (value instanceof BigDecimal) {
+				return 48;
+			}
+			return 24;
+		}
+	}
+
+	private static class Entry {
+		private final CachedResult result;
+		private final Set<String> entities;
+		private final long expiresAt;
+
+		Entry(CachedResult result, Set<String> entities, long expiresAt) {
+			this.result = result;
+			this.entities = entities;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package oql.implementation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.mendix.core.Core;
+import com.mendix.core.CoreException;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataRow;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTableSchema;
+import com.mendix.systemwideinterfaces.core.IContext;
+
+/**
+ * Retrieves the result of a statement page by page.
+ *
+ * Without a key column pages are retrieved using an offset, which requires the database to skip all
+ * previous rows for every page. When a key column is given, the statement is wrapped as
+ * SELECT * FROM (statement) WHERE key > $lastKey ORDER BY key, so every page costs the same and rows are
+ * neither skipped nor duplicated when data changes during the retrieval. The key column should be the
+ * (unique) alias of a column in the select list of the statement, e.g. the id of the main entity.
+ *
+ * Offset paging is only reliable for a statement with an ORDER BY on unique columns: without it, the database may
+ * return the rows in a different order for every page, skipping some rows and repeating others.
+ */
+public class ResultPager {
+	public static final String LAST_KEY_PARAMETER = "OQLLastKey";
+	public static final String FROM_KEY_PARAMETER = "OQLFromKey";
+	public static final String TO_KEY_PARAMETER = "OQLToKey";
+	private static final String KEYSET_ALIAS = "OQLKeyset";
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern ORDER_BY = Pattern.compile("\\bORDER\\s+BY\\b", Pattern.CASE_INSENSITIVE);
+
+	private static ILogNode logger = Core.getLogger(ResultPager.class.getSimpleName());
+
+	private final String statement;
+	private final Map<String, Object> parameters;
+	private final int pageSize;
+	private final String keyColumn;
+
+	private Object fromKey = null;
+	private Object toKey = null;
+	private long offset = 0;
+	private Object lastKey = null;
+	private boolean finished = false;
+
+	public ResultPager(String statement, Map<String, Object> parameters, int pageSize, String keyColumn) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Page size should be greater than zero, got " + pageSize);
+		}
+		this.parameters = new HashMap<String, Object>(parameters);
+		this.pageSize = pageSize;
+		this.keyColumn = keyColumn != null && !keyColumn.trim().isEmpty() ? keyColumn.trim() : null;
+		this.statement = this.keyColumn != null ? OQL.resolveStatement(statement) : statement;
+	}
+
+	/**
+	 * Restricts a keyset retrieval to the keys from fromKey (inclusive) up to toKey (exclusive).
+	 * Either bound can be null to leave that side of the range open.
+	 */
+	public ResultPager withRange(Object fromKey, Object toKey) {
+		if (keyColumn == null) {
+			throw new IllegalStateException("A key range requires a key column.");
+		}
+		this.fromKey = fromKey;
+		this.toKey = toKey;
+		return this;
+	}
+
+	/**
+	 * Continues a previous retrieval after the given key when using a key column, or after the given amount of
+	 * rows otherwise.
+	 */
+	public ResultPager resumeAfter(Object lastKey, long rowsRetrieved) {
+		this.lastKey = keyColumn != null ? lastKey : null;
+		this.offset = rowsRetrieved;
+		return this;
+	}
+
+	/**
+	 * @return the next page of results, or null if all rows have been retrieved.
+	 */
+	public IDataTable nextPage(IContext context) throws CoreException {
+		if (finished) {
+			return null;
+		}
+		IDataTable results;
+		OQLMetrics.Measurement measurement = OQLMetrics.start(context, statement, parameters);
+		try {
+			results = retrievePage(context);
+			measurement.queried(results.getRowCount());
+			measurement.completed();
+		} finally {
+			measurement.stop();
+		}
+		offset += results.getRowCount();
+		if (results.getRowCount() != pageSize) {
+			finished = true;
+		}
+		return results;
+	}
+
+	private IDataTable retrievePage(IContext context) throws CoreException {
+		IDataTable results;
+		if (keyColumn == null) {
+			logger.debug("Executing query offset " + offset);
+			results = Core.retrieveOQLDataTable(context,
+					OQL.createRequest(statement, parameters, pageSize, offset));
+		} else {
+			logger.debug("Executing query after key " + lastKey);
+			Map<String, Object> pageParameters = new HashMap<String, Object>(parameters);
+			if (lastKey != null) {
+				pageParameters.put(LAST_KEY_PARAMETER, lastKey);
+			}
+			if (fromKey != null) {
+				pageParameters.put(FROM_KEY_PARAMETER, fromKey);
+			}
+			if (toKey != null) {
+				pageParameters.put(TO_KEY_PARAMETER, toKey);
+			}
+			results = Core.retrieveOQLDataTable(context,
+					OQL.createRequest(keysetStatement(), pageParameters, pageSize, 0));
+			if (results.getRowCount() > 0) {
+				int keyIndex = getColumnIndex(results.getSchema(), keyColumn);
+				lastKey = results.getRows().get(results.getRowCount() - 1).getValue(context, keyIndex);
+			}
+		}
+		return results;
+	}
+
+	public long getRowsRetrieved() {
+		return offset;
+	}
+
+	public Object getLastKey() {
+		return lastKey;
+	}
+
+	private String keysetStatement() {
+		String key = KEYSET_ALIAS + "." + keyColumn;
+		List<String> conditions = new ArrayList<String>();
+		if (lastKey != null) {
+			conditions.add(key + " > $" + LAST_KEY_PARAMETER);
+		}
+		if (fromKey != null) {
+			conditions.add(key + " >= $" + FROM_KEY_PARAMETER);
+		}
+		if (toKey != null) {
+			conditions.add(key + " < $" + TO_KEY_PARAMETER);
+		}
+		return "SELECT * FROM (" + statement + ") AS " + KEYSET_ALIAS +
+				(conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions)) +
+				" ORDER BY " + key + " ASC";
+	}
+
+	/**
+	 * @return the lowest and highest key of the statement, or null if the statement has no results.
+	 */
+	public Object[] getKeyRange(IContext context) throws CoreException {
+		if (keyColumn == null) {
+			throw new IllegalStateException("A key range requires a key column.");
+		}
+		String key = KEYSET_ALIAS + "." + keyColumn;
+		String rangeStatement = "SELECT MIN(" + key + ") AS MinKey, MAX(" + key + ") AS MaxKey FROM (" +
+				statement + ") AS " + KEYSET_ALIAS;
+		IDataTable results = Core.retrieveOQLDataTable(context,
+				OQL.createRequest(rangeStatement, parameters, 1, 0));
+		if (results.getRowCount() == 0 || results.getRows().get(0).getValue(context, 0) == null) {
+			return null;
+		}
+		IDataRow row = results.getRows().get(0);
+		return new Object[] { row.getValue(context, 0), row.getValue(context, 1) };
+	}
+
+	/**
+	 * @return whether the statement (or one of its subqueries) contains an ORDER BY outside string literals.
+	 */
+	public static boolean hasOrderBy(String statement) {
+		return ORDER_BY.matcher(STRING_LITERAL.matcher(OQL.resolveStatement(statement)).replaceAll("''")).find();
+	}
+
+	public static int getColumnIndex(IDataTableSchema schema, String columnName) {
+		for (int i = 0; i < schema.getColumnCount(); i++) {
+			if (schema.getColumnSchema(i).getName().equalsIgnoreCase(columnName)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Key column " + columnName + " is not part of the result.");
+	}
+}
@@ -0,0 +1,192 @@
+package oql.implementation;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.mendix.core.Core;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+
+/**
+ * Keeps the most recent executions which took longer than the threshold in a bounded buffer and, when a log entity
+ * is configured, stores each of them as an object of that entity.
+ *
+ * The objects are committed by a background thread, at most MAX_OBJECTS_PER_COMMIT per commit, so the statement
+ * which was slow does not wait for another round trip to the database. When more than MAX_PENDING_OBJECTS wait to be
+ * stored, further executions are only kept in the buffer.
+ */
+public class SlowQueryLog {
+	public static final long DEFAULT_THRESHOLD = 1000;
+	public static final int DEFAULT_BUFFER_SIZE = 100;
+
+	private static final int MAX_PENDING_OBJECTS = 1000;
+	private static final int MAX_OBJECTS_PER_COMMIT = 100;
+
+	private static ILogNode logger = Core.getLogger(SlowQueryLog.class.getSimpleName());
+
+	private static final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "OQL-SlowQueryLog");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	static {
+		writer.allowCoreThreadTimeOut(true);
+	}
+
+	private static final BlockingQueue<Pending> pending = new ArrayBlockingQueue<Pending>(MAX_PENDING_OBJECTS);
+	private static final AtomicBoolean writing = new AtomicBoolean(false);
+
+	private static final Deque<Map<String, Object>> entries = new ArrayDeque<Map<String, Object>>();
+	private static volatile long threshold = DEFAULT_THRESHOLD;
+	private static int maxEntries = DEFAULT_BUFFER_SIZE;
+	private static volatile String logEntity = null;
+
+	public static synchronized void configure(long thresholdMillis, int bufferSize, String entity) {
+		threshold = thresholdMillis;
+		maxEntries = bufferSize;
+		logEntity = entity != null && !entity.trim().isEmpty() ? entity.trim() : null;
+		while (entries.size() > maxEntries) {
+			entries.removeFirst();
+		}
+	}
+
+	public static boolean isSlow(long durationMillis) {
+		return threshold >= 0 && durationMillis >= threshold;
+	}
+
+	static void record(IContext context, String statement, Map<String, Object> parameters, long rows,
+			long queryTime, long mappingTime) {
+		Map<String, Object> entry = new LinkedHashMap<String, Object>();
+		entry.put("Statement", statement);
+		entry.put("Parameters", formatParameters(parameters));
+		entry.put("Rows", rows);
+		entry.put("QueryTime", queryTime);
+		entry.put("MappingTime", mappingTime);
+		entry.put("Duration", queryTime + mappingTime);
+		entry.put("UserName", context != null ? OQL.getUserName(context) : null);
+		entry.put("ExecutedAt", new Date());
+		synchronized (SlowQueryLog.class) {
+			entries.addLast(entry);
+			while (entries.size() > maxEntries) {
+				entries.removeFirst();
+			}
+		}
+
+		String entity = logEntity;
+		if (entity != null) {
+			if (!pending.offer(new Pending(entity, entry))) {
+				logger.warn("Too many slow queries waiting to be stored in " + entity + ", skipping this one");
+			} else if (writing.compareAndSet(false, true)) {
+				writer.execute(new Runnable() {
+					@Override
+					public void run() {
+						write();
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Stores the pending executions until none are left, committing them per entity.
+	 */
+	private static void write() {
+		List<Pending> batch = new ArrayList<Pending>();
+		while (true) {
+			pending.drainTo(batch, MAX_OBJECTS_PER_COMMIT);
+			if (batch.isEmpty()) {
+				writing.set(false);
+				// an execution recorded after draining, but before writing was reset, is stored by this thread.
+				if (pending.isEmpty() || !writing.compareAndSet(false, true)) {
+					return;
+				}
+				continue;
+			}
+			Map<String, List<IMendixObject>> objects = new LinkedHashMap<String, List<IMendixObject>>();
+			try {
+				IContext logContext = Core.createSystemContext();
+				for (Pending execution : batch) {
+					if (!objects.containsKey(execution.entity)) {
+						objects.put(execution.entity, new ArrayList<IMendixObject>());
+					}
+					objects.get(execution.entity).add(OQL.createSummary(logContext, execution.entity, execution.entry));
+				}
+				for (Map.Entry<String, List<IMendixObject>> entity : objects.entrySet()) {
+					Core.commit(logContext, entity.getValue());
+				}
+			} catch (Exception e) {
+				logger.warn("Could not store " + batch.size() + " slow queries: " + e.getMessage(), e);
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * @return the buffered slow executions, oldest first, as attribute name and value pairs.
+	 */
+	public static synchronized List<Map<String, Object>> getEntries() {
+		return new ArrayList<Map<String, Object>>(entries);
+	}
+
+	public static synchronized void clear() {
+		entries.clear();
+	}
+
+	private static class Pending {
+		private final String entity;
+		private final Map<String, Object> entry;
+
+		Pending(String entity, Map<String, Object> entry) {
+			this.entity = entity;
+			this.entry = entry;
+		}
+	}
+
+	private static String formatParameters(Map<String, Object> parameters) {
+		if (parameters == null || parameters.isEmpty()) {
+			return "";
+		}
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		StringBuilder result = new StringBuilder();
+		for (Map.Entry<String, Object> parameter : new TreeMap<String, Object>(parameters).entrySet()) {
+			Object value = parameter.getValue();
+			if (result.length() > 0) {
+				result.append(", ");
+			}
+			result.append('$').append(parameter.getKey()).append(" = ");
+			if (value instanceof IMendixIdentifier) {
+				result.append(((IMendixIdentifier) value).toLong());
+			} else if (value instanceof Date) {
+				result.append(dateFormat.format((Date) value));
+			} else if (value instanceof String) {
+				result.append('\'').append(((String) value).replace("'", "''")).append('\'');
+			} else {
+				result.append(value);
+			}
+		}
+		return result.toString();
+	}
+}
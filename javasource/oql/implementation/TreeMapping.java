@@ -0,0 +1,250 @@
+package oql.implementation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mendix.core.Core;
+import com.mendix.core.CoreException;
+import com.mendix.logging.ILogNode;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataRow;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTableSchema;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+import com.mendix.systemwideinterfaces.core.IMendixObject;
+import com.mendix.systemwideinterfaces.core.meta.IMetaAssociation;
+import com.mendix.systemwideinterfaces.core.meta.IMetaObject;
+
+/**
+ * Maps the rows of one (joined) statement onto a tree of objects. The alias of a column holds the path of the object
+ * it belongs to, separated by double underscores, as OQL does not accept dots in aliases: Number belongs to the
+ * root object, Line__Quantity to a Line below the root and Line__Product__Name to a Product below that Line.
+ * A path segment is the name (without module) of an association between the entity of the object above and the
+ * entity of the object itself, or the name (without module) of that entity when only one association leads to it.
+ *
+ * Objects are de-duplicated within the object above by their ID column (e.g. L.ID AS Line__ID), or by all their
+ * values when there is no ID column. Objects without any value (e.g. of an outer join without match) are skipped.
+ */
+public class TreeMapping {
+	public static final String PATH_SEPARATOR = "__";
+	public static final String ID_COLUMN = "ID";
+
+	private static ILogNode logger = Core.getLogger(TreeMapping.class.getSimpleName());
+
+	private final String returnEntity;
+	private Node root;
+	private final Map<List<Object>, IMendixObject> objects = new HashMap<List<Object>, IMendixObject>();
+	private final List<IMendixObject> roots = new ArrayList<IMendixObject>();
+
+	public TreeMapping(String returnEntity) {
+		this.returnEntity = returnEntity;
+	}
+
+	/**
+	 * Executes the statement in one request, like executeOQL, and adds its rows to the tree. Paging by offset
+	 * could skip or repeat rows of a joined statement without a unique ORDER BY.
+	 * @return the root objects, in the order of their first row.
+	 */
+	public static List<IMendixObject> execute(IContext context, String statement, String returnEntity,
+			Map<String, Object> parameters) throws CoreException {
+		TreeMapping mapping = new TreeMapping(returnEntity);
+		logger.debug("Executing query\n:" + statement);
+		OQLMetrics.Measurement measurement = OQLMetrics.start(context, statement, parameters);
+		try {
+			IDataTable results = Core.retrieveOQLDataTable(context, OQL.createRequest(statement, parameters, 0, 0));
+			measurement.queried(results.getRowCount());
+			mapping.add(context, results);
+			measurement.completed();
+			logger.debug("Mapped " + results.getRowCount() + " rows onto " + mapping.objects.size() + " objects");
+		} finally {
+			measurement.stop();
+		}
+		return mapping.getRoots();
+	}
+
+	public void add(IContext context, IDataTable page) {
+		if (root == null) {
+			root = prepare(page.getSchema());
+		}
+		Object[] values = new Object[page.getSchema().getColumnCount()];
+		for (IDataRow row : page.getRows()) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = row.getValue(context, i);
+			}
+			add(context, root, null, Collections.emptyList(), values);
+		}
+	}
+
+	public List<IMendixObject> getRoots() {
+		return roots;
+	}
+
+	private void add(IContext context, Node node, IMendixObject parent, List<Object> parentKey, Object[] row) {
+		List<Object> key = new ArrayList<Object>(parentKey.size() + 2);
+		key.addAll(parentKey);
+		key.add(node.path);
+		boolean empty = true;
+		if (node.idColumn >= 0) {
+			Object id = row[node.idColumn];
+			empty = id == null;
+			key.add(id instanceof IMendixIdentifier ? (Object) ((IMendixIdentifier) id).toLong() : id);
+		} else {
+			for (int column : node.columns) {
+				Object value = row[column];
+				empty &= value == null;
+				key.add(value instanceof IMendixIdentifier ? (Object) ((IMendixIdentifier) value).toLong() : value);
+			}
+		}
+		if (empty) {
+			return;
+		}
+
+		IMendixObject object = objects.get(key);
+		if (object == null) {
+			Object[] values = new Object[node.columns.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = row[node.columns[i]];
+			}
+			object = node.plan.map(context, values);
+			objects.put(key, object);
+			if (parent == null) {
+				roots.add(object);
+			} else {
+				link(context, node, parent, object);
+			}
+		}
+		for (Node child : node.children) {
+			add(context, child, object, key, row);
+		}
+	}
+
+	private static void link(IContext context, Node node, IMendixObject parent, IMendixObject child) {
+		if (node.ownedByChild) {
+			child.setValue(context, node.association, parent.getId());
+			return;
+		}
+		Object current = parent.getValue(context, node.association);
+		if (current instanceof List) {
+			List<IMendixIdentifier> ids = new ArrayList<IMendixIdentifier>();
+			for (Object id : (List<?>) current) {
+				ids.add((IMendixIdentifier) id);
+			}
+			ids.add(child.getId());
+			parent.setValue(context, node.association, ids);
+		} else {
+			parent.setValue(context, node.association, child.getId());
+		}
+	}
+
+	private Node prepare(IDataTableSchema schema) {
+		Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+		Map<String, List<Integer>> columns = new HashMap<String, List<Integer>>();
+		Map<String, List<String>> names = new HashMap<String, List<String>>();
+		Node rootNode = new Node("", returnEntity, null, false);
+		nodes.put("", rootNode);
+
+		for (int i = 0; i < schema.getColumnCount(); i++) {
+			String alias = schema.getColumnSchema(i).getName();
+			int separator = alias.lastIndexOf(PATH_SEPARATOR);
+			String path = separator >= 0 ? alias.substring(0, separator) : "";
+			String member = separator >= 0 ? alias.substring(separator + PATH_SEPARATOR.length()) : alias;
+			Node node = getNode(nodes, path);
+			if (member.equalsIgnoreCase(ID_COLUMN)) {
+				node.idColumn = i;
+				continue;
+			}
+			if (!columns.containsKey(path)) {
+				columns.put(path, new ArrayList<Integer>());
+				names.put(path, new ArrayList<String>());
+			}
+			columns.get(path).add(i);
+			names.get(path).add(member);
+		}
+
+		for (Node node : nodes.values()) {
+			List<Integer> nodeColumns = columns.containsKey(node.path) ? columns.get(node.path) :
+				Collections.<Integer>emptyList();
+			node.columns = new int[nodeColumns.size()];
+			for (int i = 0; i < node.columns.length; i++) {
+				node.columns[i] = nodeColumns.get(i);
+			}
+			List<String> nodeNames = names.containsKey(node.path) ? names.get(node.path) :
+				Collections.<String>emptyList();
+			node.plan = MappingPlan.get(node.entity, nodeNames.toArray(new String[nodeNames.size()]));
+		}
+		return rootNode;
+	}
+
+	private static Node getNode(Map<String, Node> nodes, String path) {
+		Node node = nodes.get(path);
+		if (node != null) {
+			return node;
+		}
+		int separator = path.lastIndexOf(PATH_SEPARATOR);
+		Node parent = getNode(nodes, separator >= 0 ? path.substring(0, separator) : "");
+		String segment = separator >= 0 ? path.substring(separator + PATH_SEPARATOR.length()) : path;
+		node = resolve(parent, path, segment);
+		parent.children.add(node);
+		nodes.put(path, node);
+		return node;
+	}
+
+	/**
+	 * Finds the association between the entity of the parent and the entity named by the segment.
+	 */
+	private static Node resolve(Node parent, String path, String segment) {
+		IMetaObject parentMeta = Core.getMetaObject(parent.entity);
+		Node byEntity = null;
+		int entityMatches = 0;
+		List<Node> candidates = new ArrayList<Node>();
+		for (IMetaAssociation association : parentMeta.getMetaAssociationsParent()) {
+			candidates.add(new Node(path, association.getChild().getName(), association.getName(), false));
+		}
+		for (IMetaAssociation association : parentMeta.getMetaAssociationsChild()) {
+			candidates.add(new Node(path, association.getParent().getName(), association.getName(), true));
+		}
+		for (Node candidate : candidates) {
+			if (shortName(candidate.association).equalsIgnoreCase(segment)) {
+				return candidate;
+			}
+			if (shortName(candidate.entity).equalsIgnoreCase(segment)) {
+				byEntity = candidate;
+				entityMatches++;
+			}
+		}
+		if (entityMatches > 1) {
+			throw new IllegalArgumentException("Multiple associations of " + parent.entity + " lead to " + segment +
+					", use the name of the association in " + path + " instead.");
+		} else if (byEntity == null) {
+			throw new IllegalArgumentException("No association of " + parent.entity + " matches " + segment +
+					" in " + path);
+		}
+		return byEntity;
+	}
+
+	private static String shortName(String name) {
+		return name.substring(name.indexOf('.') + 1);
+	}
+
+	private static class Node {
+		private final String path;
+		private final String entity;
+		private final String association;
+		private final boolean ownedByChild;
+		private final List<Node> children = new ArrayList<Node>();
+		private int idColumn = -1;
+		private int[] columns;
+		private MappingPlan plan;
+
+		Node(String path, String entity, String association, boolean ownedByChild) {
+			this.path = path;
+			this.entity = entity;
+			this.association = association;
+			this.ownedByChild = ownedByChild;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package oql.implementation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mendix.core.CoreException;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataColumnSchema;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataRow;
+import com.mendix.systemwideinterfaces.connectionbus.data.IDataTable;
+import com.mendix.systemwideinterfaces.core.IContext;
+import com.mendix.systemwideinterfaces.core.IMendixIdentifier;
+
+/**
+ * Writes the result of a statement as an Excel workbook, see XLSXWriter. Only the current page of results is kept
+ * in memory, every row is written to the sheet as soon as it has been retrieved.
+ */
+public class XLSXExport {
+	private final boolean exportHeaders;
+	private final int maxRowsPerSheet;
+
+	public XLSXExport(boolean exportHeaders, int maxRowsPerSheet) {
+		this.exportHeaders = exportHeaders;
+		this.maxRowsPerSheet = maxRowsPerSheet;
+	}
+
+	/**
+	 * Writes all pages of the pager to the output stream. The stream is flushed but not closed.
+	 * @return the amount of rows written
+	 */
+	public long export(IContext context, ResultPager pager, OutputStream os) throws CoreException, IOException {
+		XLSXWriter writer = null;
+		IDataTable results;
+		while ((results = pager.nextPage(context)) != null) {
+			if (writer == null) {
+				List<String> headers = null;
+				if (exportHeaders) {
+					headers = new ArrayList<String>();
+					for (IDataColumnSchema columnSchema : results.getSchema().getColumnSchemas()) {
+						headers.add(columnSchema.getName());
+					}
+				}
+				writer = new XLSXWriter(os, headers, maxRowsPerSheet);
+			}
+			int columnCount = results.getSchema().getColumnCount();
+			for (IDataRow row : results.getRows()) {
+				Object[] values = new Object[columnCount];
+				for (int i = 0; i < columnCount; i++) {
+					Object value = row.getValue(context, i);
+					values[i] = value instanceof IMendixIdentifier ? ((IMendixIdentifier) value).toLong() : value;
+				}
+				writer.write(values);
+			}
+		}
+		writer.finish();
+		return writer.getRowsWritten();
+	}
+}
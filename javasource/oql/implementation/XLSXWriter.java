@@ -0,0 +1,258 @@
+package oql.implementation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.mendix.core.Core;
+import com.mendix.logging.ILogNode;
+
+/**
+ * Writes rows as an Excel workbook (XLSX), streaming every row directly into the worksheet entry of the zip file.
+ * Only the row being written is kept in memory. Strings are written inline instead of in a shared strings table,
+ * so nothing has to be collected until the end of the file. When a sheet is full, the writer continues on a new
+ * sheet, starting with the header row again.
+ *
+ * Dates are written as Excel date values in UTC. Longs which cannot be represented exactly by Excel (more than
+ * 15 digits) are written as text. Strings longer than the 32767 characters a cell can hold are truncated, as Excel
+ * refuses to open a workbook containing them.
+ */
+public class XLSXWriter {
+	public static final int MAX_ROWS_PER_SHEET = 1048576;
+	public static final int MAX_CELL_LENGTH = 32767;
+
+	private static ILogNode logger = Core.getLogger(XLSXWriter.class.getSimpleName());
+
+	private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+	private static final String SPREADSHEET_NAMESPACE = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+	private static final String RELATIONSHIPS_NAMESPACE =
+			"http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+	private static final String PACKAGE_RELATIONSHIPS_NAMESPACE =
+			"http://schemas.openxmlformats.org/package/2006/relationships";
+	private static final long MAX_EXACT_NUMBER = 999999999999999L;
+	private static final long MILLIS_PER_DAY = 86400000L;
+	// days between the Excel epoch (1899-12-30) and the Unix epoch.
+	private static final double EXCEL_EPOCH_OFFSET = 25569;
+	private static final int DATE_STYLE = 1;
+
+	private final ZipOutputStream zip;
+	private final Writer writer;
+	private final List<String> headers;
+	private final int maxRowsPerSheet;
+	private int sheetCount = 0;
+	private int sheetRows = 0;
+	private long rowsWritten = 0;
+	private long truncatedCells = 0;
+
+	/**
+	 * @param headers the column names to write as the first row of every sheet, or null to write no header row.
+	 */
+	public XLSXWriter(OutputStream os, List<String> headers, int maxRowsPerSheet) {
+		if (maxRowsPerSheet < (headers != null ? 2 : 1) || maxRowsPerSheet > MAX_ROWS_PER_SHEET) {
+			throw new IllegalArgumentException("Invalid amount of rows per sheet: " + maxRowsPerSheet);
+		}
+		this.zip = new ZipOutputStream(os);
+		this.writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 64 * 1024);
+		this.headers = headers;
+		this.maxRowsPerSheet = maxRowsPerSheet;
+	}
+
+	public void write(Object[] row) throws IOException {
+		if (sheetCount == 0 || sheetRows == maxRowsPerSheet) {
+			startSheet();
+		}
+		writeRow(row);
+		rowsWritten++;
+	}
+
+	/**
+	 * Closes the last sheet and writes the workbook. The zip file is finished, but the stream is not closed.
+	 */
+	public void finish() throws IOException {
+		if (truncatedCells > 1) {
+			logger.warn("Truncated " + truncatedCells + " values to " + MAX_CELL_LENGTH + " characters");
+		}
+		if (sheetCount == 0) {
+			startSheet();
+		}
+		endSheet();
+		writeEntry("[Content_Types].xml", contentTypes());
+		writeEntry("_rels/.rels", XML_HEADER + "<Relationships xmlns=\"" + PACKAGE_RELATIONSHIPS_NAMESPACE + "\">" +
+				"<Relationship Id=\"rId1\" Type=\"" + RELATIONSHIPS_NAMESPACE + "/officeDocument\" " +
+				"Target=\"xl/workbook.xml\"/></Relationships>");
+		writeEntry("xl/workbook.xml", workbook());
+		writeEntry("xl/_rels/workbook.xml.rels", workbookRelationships());
+		writeEntry("xl/styles.xml", XML_HEADER + "<styleSheet xmlns=\"" + SPREADSHEET_NAMESPACE + "\">" +
+				"<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>" +
+				"<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>" +
+				"<fill><patternFill patternType=\"gray125\"/></fill></fills>" +
+				"<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>" +
+				"<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>" +
+				"<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>" +
+				"<xf numFmtId=\"22\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/></cellXfs>" +
+				"<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>" +
+				"</styleSheet>");
+		zip.finish();
+		zip.flush();
+	}
+
+	public long getRowsWritten() {
+		return rowsWritten;
+	}
+
+	public int getSheetCount() {
+		return sheetCount;
+	}
+
+	private void startSheet() throws IOException {
+		if (sheetCount > 0) {
+			endSheet();
+		}
+		sheetCount++;
+		sheetRows = 0;
+		zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetCount + ".xml"));
+		writer.write(XML_HEADER);
+		writer.write("<worksheet xmlns=\"" + SPREADSHEET_NAMESPACE + "\"><sheetData>");
+		if (headers != null) {
+			writeRow(headers.toArray());
+		}
+	}
+
+	private void endSheet() throws IOException {
+		writer.write("</sheetData></worksheet>");
+		writer.flush();
+		zip.closeEntry();
+	}
+
+	private void writeRow(Object[] row) throws IOException {
+		sheetRows++;
+		writer.write("<row r=\"");
+		writer.write(Integer.toString(sheetRows));
+		writer.write("\">");
+		for (Object value : row) {
+			if (value == null) {
+				writer.write("<c/>");
+			} else if (value instanceof Boolean) {
+				writer.write((Boolean) value ? "<c t=\"b\"><v>1</v></c>" : "<c t=\"b\"><v>0</v></c>");
+			} else if (value instanceof Date) {
+				writer.write("<c s=\"" + DATE_STYLE + "\"><v>");
+				writer.write(Double.toString(((Date) value).getTime() / (double) MILLIS_PER_DAY + EXCEL_EPOCH_OFFSET));
+				writer.write("</v></c>");
+			} else if (value instanceof BigDecimal) {
+				writeNumber(((BigDecimal) value).toPlainString());
+			} else if (value instanceof Double || value instanceof Float) {
+				double number = ((Number) value).doubleValue();
+				if (Double.isNaN(number) || Double.isInfinite(number)) {
+					writeString(value.toString());
+				} else {
+					writeNumber(value.toString());
+				}
+			} else if (value instanceof Number) {
+				long number = ((Number) value).longValue();
+				if (Math.abs(number) <= MAX_EXACT_NUMBER) {
+					writeNumber(Long.toString(number));
+				} else {
+					writeString(Long.toString(number));
+				}
+			} else {
+				writeString(value.toString());
+			}
+		}
+		writer.write("</row>");
+	}
+
+	private void writeNumber(String number) throws IOException {
+		writer.write("<c><v>");
+		writer.write(number);
+		writer.write("</v></c>");
+	}
+
+	private void writeString(String value) throws IOException {
+		if (value.length() > MAX_CELL_LENGTH) {
+			if (truncatedCells++ == 0) {
+				logger.warn("Truncating a value of " + value.length() + " characters in row " + (rowsWritten + 1) +
+						" to " + MAX_CELL_LENGTH + " characters, the maximum of an Excel cell");
+			}
+			// a surrogate pair is not split, as half of it is not valid XML.
+			int end = Character.isHighSurrogate(value.charAt(MAX_CELL_LENGTH - 1)) ? MAX_CELL_LENGTH - 1 : MAX_CELL_LENGTH;
+			value = value.substring(0, end);
+		}
+		writer.write("<c t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			String replacement;
+			if (c == '&') {
+				replacement = "&amp;";
+			} else if (c == '<') {
+				replacement = "&lt;";
+			} else if (c == '>') {
+				replacement = "&gt;";
+			} else if (c < 0x20 && c != '\t' && c != '\n' && c != '\r' || c == 0xFFFE || c == 0xFFFF) {
+				// not allowed in XML
+				replacement = "";
+			} else {
+				continue;
+			}
+			writer.write(value, start, i - start);
+			writer.write(replacement);
+			start = i + 1;
+		}
+		writer.write(value, start, value.length() - start);
+		writer.write("</t></is></c>");
+	}
+
+	private void writeEntry(String name, String content) throws IOException {
+		zip.putNextEntry(new ZipEntry(name));
+		writer.write(content);
+		writer.flush();
+		zip.closeEntry();
+	}
+
+	private String contentTypes() {
+		StringBuilder result = new StringBuilder(XML_HEADER);
+		result.append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">");
+		result.append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>");
+		result.append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+		result.append("<Override PartName=\"/xl/workbook.xml\" ");
+		result.append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>");
+		result.append("<Override PartName=\"/xl/styles.xml\" ");
+		result.append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+		for (int i = 1; i <= sheetCount; i++) {
+			result.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ");
+			result.append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+		}
+		return result.append("</Types>").toString();
+	}
+
+	private String workbook() {
+		StringBuilder result = new StringBuilder(XML_HEADER);
+		result.append("<workbook xmlns=\"").append(SPREADSHEET_NAMESPACE).append("\" xmlns:r=\"")
+				.append(RELATIONSHIPS_NAMESPACE).append("\"><sheets>");
+		for (int i = 1; i <= sheetCount; i++) {
+			result.append("<sheet name=\"Sheet").append(i).append("\" sheetId=\"").append(i)
+					.append("\" r:id=\"rId").append(i).append("\"/>");
+		}
+		return result.append("</sheets></workbook>").toString();
+	}
+
+	private String workbookRelationships() {
+		StringBuilder result = new StringBuilder(XML_HEADER);
+		result.append("<Relationships xmlns=\"").append(PACKAGE_RELATIONSHIPS_NAMESPACE).append("\">");
+		for (int i = 1; i <= sheetCount; i++) {
+			result.append("<Relationship Id=\"rId").append(i).append("\" Type=\"").append(RELATIONSHIPS_NAMESPACE)
+					.append("/worksheet\" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+		}
+		result.append("<Relationship Id=\"rId").append(sheetCount + 1).append("\" Type=\"")
+				.append(RELATIONSHIPS_NAMESPACE).append("/styles\" Target=\"styles.xml\"/>");
+		return result.append("</Relationships>").toString();
+	}
+}